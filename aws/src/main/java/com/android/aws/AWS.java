@@ -20,10 +20,17 @@ package com.android.aws;
 import android.content.Context;
 import android.graphics.BitmapFactory;
 
+import com.android.aws.cache.AWSBitmapPool;
+import com.android.aws.cache.AWSDiskBitmapCache;
+import com.android.aws.cache.AWSDiskCache;
+import com.android.aws.cache.AWSResponseCache;
+import com.android.aws.cache.DiskCacheStats;
 import com.android.aws.common.AWSConstants;
 import com.android.aws.common.AWSRequest;
 import com.android.aws.common.ConnectionClassManager;
 import com.android.aws.common.ConnectionQuality;
+import com.android.aws.common.OfflinePolicy;
+import com.android.aws.common.PartUploadRequest;
 import com.android.aws.core.Core;
 import com.android.aws.interceptors.HttpLoggingInterceptor.Level;
 import com.android.aws.interfaces.ConnectionQualityChangeListener;
@@ -31,9 +38,18 @@ import com.android.aws.interfaces.Parser;
 import com.android.aws.internal.AWSImageLoader;
 import com.android.aws.internal.AWSRequestQueue;
 import com.android.aws.internal.InternalNetworking;
+import com.android.aws.internal.MemoryTrimmer;
+import com.android.aws.internal.ProgressHandler;
+import com.android.aws.metrics.AWSMetrics;
+import com.android.aws.metrics.MetricsSnapshot;
+import com.android.aws.prefetch.PrefetchConstraints;
+import com.android.aws.prefetch.PrefetchScheduler;
+import com.android.aws.prefetch.PrefetchStats;
 import com.android.aws.utils.ParseUtil;
 import com.android.aws.utils.Utils;
 
+import java.io.File;
+
 import okhttp3.OkHttpClient;
 
 /**
@@ -56,9 +72,39 @@ public class AWS {
      * @param context The context
      */
     public static void initialize(Context context) {
+        InternalNetworking.setContext(context.getApplicationContext());
         InternalNetworking.setClientWithCache(context.getApplicationContext());
         AWSRequestQueue.initialize();
         AWSImageLoader.initialize();
+        MemoryTrimmer.register(context);
+    }
+
+    /**
+     * Initializes AWS with a disk cache of the given size.
+     *
+     * @param context       The context
+     * @param diskCacheSize The disk cache size in bytes
+     */
+    public static void initialize(Context context, long diskCacheSize) {
+        InternalNetworking.setContext(context.getApplicationContext());
+        InternalNetworking.setClientWithCache(context.getApplicationContext(), diskCacheSize);
+        AWSRequestQueue.initialize();
+        AWSImageLoader.initialize();
+        MemoryTrimmer.register(context);
+    }
+
+    /**
+     * Initializes AWS with a disk cache sized from the free space on the device and the hit
+     * rate observed in previous sessions.
+     *
+     * @param context          The context
+     * @param minDiskCacheSize The minimum disk cache size in bytes
+     * @param maxDiskCacheSize The maximum disk cache size in bytes
+     */
+    public static void initializeWithAdaptiveDiskCache(Context context, long minDiskCacheSize,
+                                                       long maxDiskCacheSize) {
+        initialize(context, AWSDiskCache.getAdaptiveSize(context.getApplicationContext(),
+                minDiskCacheSize, maxDiskCacheSize));
     }
 
     /**
@@ -75,9 +121,11 @@ public class AWS {
                             AWSConstants.MAX_CACHE_SIZE, AWSConstants.CACHE_DIR_NAME))
                     .build();
         }
+        InternalNetworking.setContext(context.getApplicationContext());
         InternalNetworking.setClient(okHttpClient);
         AWSRequestQueue.initialize();
         AWSImageLoader.initialize();
+        MemoryTrimmer.register(context);
     }
 
     /**
@@ -91,6 +139,16 @@ public class AWS {
         }
     }
 
+    /**
+     * Method to set how often upload and download progress is delivered
+     *
+     * @param minBytesDelta     The minimum number of bytes between two progress updates
+     * @param minIntervalMillis The minimum time between two progress updates
+     */
+    public static void setProgressUpdateThreshold(long minBytesDelta, long minIntervalMillis) {
+        ProgressHandler.setUpdateThreshold(minBytesDelta, minIntervalMillis);
+    }
+
     /**
      * Method to set connectionQualityChangeListener
      *
@@ -199,6 +257,17 @@ public class AWS {
         return new AWSRequest.MultiPartBuilder(url);
     }
 
+    /**
+     * Method to make an S3-style multipart upload, sending the file as parts in parallel
+     *
+     * @param url  The url of the object to be uploaded
+     * @param file The file to be uploaded
+     * @return The PartUploadRequest.Builder
+     */
+    public static PartUploadRequest.Builder uploadInParts(String url, File file) {
+        return new PartUploadRequest.Builder(url, file);
+    }
+
     /**
      * Method to make Dynamic request
      *
@@ -270,6 +339,37 @@ public class AWS {
         }
     }
 
+    /**
+     * Method to keep decoded, downsampled bitmaps in a disk cache as well, so that images
+     * evicted from memory or lost on restart are not downloaded and decoded again
+     *
+     * @param context The context
+     * @param maxSize The maximum size of the bitmap disk cache in bytes
+     */
+    public static void enableBitmapDiskCache(Context context, long maxSize) {
+        AWSImageLoader.getInstance().setDiskCache(new AWSDiskBitmapCache(
+                Utils.getDiskCacheDir(context.getApplicationContext(),
+                        AWSConstants.BITMAP_DISK_CACHE_DIR_NAME), maxSize));
+    }
+
+    /**
+     * Method to set the memory budget of the pool that decodes reuse bitmaps from
+     *
+     * @param maxSize The max size in bytes, 0 disables reuse
+     */
+    public static void setBitmapPoolSize(long maxSize) {
+        AWSBitmapPool.getInstance().resize(maxSize);
+    }
+
+    /**
+     * Method to get the bitmap pool and its hit and miss counts
+     *
+     * @return The bitmap pool
+     */
+    public static AWSBitmapPool getBitmapPool() {
+        return AWSBitmapPool.getInstance();
+    }
+
     /**
      * Method to clear AWSCache
      */
@@ -307,6 +407,100 @@ public class AWS {
         return ConnectionClassManager.getInstance().getCurrentConnectionQuality();
     }
 
+    /**
+     * Method to keep string and JSON responses of fresh GET requests in memory, so that repeated
+     * requests skip the disk cache. Every hit gets its own JSON object, so listeners may modify
+     * their result. Responses parsed into objects are not kept
+     *
+     * @param maxEntries The maximum number of parsed responses to keep
+     */
+    public static void enableResponseMemoryCache(int maxEntries) {
+        AWSResponseCache.enable(maxEntries);
+    }
+
+    /**
+     * Method to disable and clear the parsed response memory cache
+     */
+    public static void disableResponseMemoryCache() {
+        AWSResponseCache.disable();
+    }
+
+    /**
+     * Method to get the disk cache statistics
+     *
+     * @return diskCacheStats
+     */
+    public static DiskCacheStats getDiskCacheStats() {
+        return AWSDiskCache.getStats();
+    }
+
+    /**
+     * Method to trim the disk cache on a background thread, e.g. when storage runs low
+     *
+     * @param maxBytes The size to trim the disk cache down to
+     */
+    public static void trimDiskCache(long maxBytes) {
+        AWSDiskCache.trim(maxBytes);
+    }
+
+    /**
+     * Method to set the conditions under which scheduled prefetches run
+     *
+     * @param prefetchConstraints The prefetchConstraints
+     */
+    public static void setPrefetchConstraints(PrefetchConstraints prefetchConstraints) {
+        PrefetchScheduler.getInstance().setConstraints(prefetchConstraints);
+    }
+
+    /**
+     * Method to get the prefetch statistics, including the prefetch hit rate
+     *
+     * @return prefetchStats
+     */
+    public static PrefetchStats getPrefetchStats() {
+        return PrefetchScheduler.getInstance().getStats();
+    }
+
+    /**
+     * Method to set the offline policy used by GET requests that do not set their own
+     *
+     * @param offlinePolicy The offlinePolicy, or null to disable the cache fallback
+     */
+    public static void setOfflinePolicy(OfflinePolicy offlinePolicy) {
+        InternalNetworking.setOfflinePolicy(offlinePolicy);
+    }
+
+    /**
+     * Method to enable the metrics registry, which aggregates latency histograms and counters
+     * for every finished request
+     */
+    public static void enableMetrics() {
+        AWSMetrics.getInstance().setEnabled(true);
+    }
+
+    /**
+     * Method to disable the metrics registry
+     */
+    public static void disableMetrics() {
+        AWSMetrics.getInstance().setEnabled(false);
+    }
+
+    /**
+     * Method to get a snapshot of the metrics recorded so far
+     *
+     * @return metricsSnapshot
+     */
+    public static MetricsSnapshot getMetricsSnapshot() {
+        return AWSMetrics.getInstance().snapshot();
+    }
+
+    /**
+     * Method to reset the recorded metrics, e.g. after uploading a snapshot
+     */
+    public static void resetMetrics() {
+        AWSMetrics.getInstance().reset();
+    }
+
     /**
      * Method to set ParserFactory
      *
@@ -330,8 +524,11 @@ public class AWS {
      * Shuts AWS down
      */
     public static void shutDown() {
+        AWSDiskCache.saveHitRate();
+        MemoryTrimmer.unregister();
         Core.shutDown();
         evictAllBitmap();
+        AWSBitmapPool.getInstance().evictAll();
         ConnectionClassManager.getInstance().removeListener();
         ConnectionClassManager.shutDown();
         ParseUtil.shutDown();
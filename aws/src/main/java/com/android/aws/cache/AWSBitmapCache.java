@@ -21,11 +21,110 @@ import android.graphics.Bitmap;
 
 import com.android.aws.internal.AWSImageLoader;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Memory cache of decoded bitmaps. Bitmaps handed out to image containers are reference
+ * counted, and a bitmap that leaves the cache goes to the {@link AWSBitmapPool} only once no
+ * container holds it anymore. Bitmaps given to listeners that never release them are never
+ * pooled.
+ */
 public class AWSBitmapCache extends AWSCache<String, Bitmap>
         implements AWSImageLoader.ImageCache {
 
+    // Bitmap does not override equals, so these are keyed by identity.
+    private final Map<Bitmap, Integer> mReferences = new WeakHashMap<>();
+    private final Map<Bitmap, Boolean> mRemoved = new WeakHashMap<>();
+    private volatile AWSBitmapPool mBitmapPool;
+
     public AWSBitmapCache(int maxSize) {
-        super(maxSize);
+        this(maxSize, AWSBitmapPool.getInstance());
+    }
+
+    public AWSBitmapCache(int maxSize, AWSBitmapPool bitmapPool) {
+        this(maxSize, bitmapPool, EvictionPolicy.LRU);
+    }
+
+    public AWSBitmapCache(int maxSize, EvictionPolicy evictionPolicy) {
+        this(maxSize, AWSBitmapPool.getInstance(), evictionPolicy);
+    }
+
+    public AWSBitmapCache(int maxSize, AWSBitmapPool bitmapPool, EvictionPolicy evictionPolicy) {
+        super(maxSize, evictionPolicy);
+        mBitmapPool = bitmapPool;
+    }
+
+    public void setBitmapPool(AWSBitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    public AWSBitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Looks up a bitmap and takes a reference on it in one step, so it cannot be evicted and
+     * pooled in between.
+     */
+    public Bitmap getAndAcquire(String key) {
+        synchronized (mReferences) {
+            Bitmap bitmap = get(key);
+            acquire(bitmap);
+            return bitmap;
+        }
+    }
+
+    public void acquire(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mReferences) {
+            Integer count = mReferences.get(bitmap);
+            mReferences.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    public void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        synchronized (mReferences) {
+            Integer count = mReferences.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                mReferences.put(bitmap, count - 1);
+                return;
+            }
+            mReferences.remove(bitmap);
+            if (mRemoved.remove(bitmap) == null) {
+                return;
+            }
+        }
+        recycle(bitmap);
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue == null || oldValue == newValue) {
+            return;
+        }
+        synchronized (mReferences) {
+            if (mReferences.containsKey(oldValue)) {
+                mRemoved.put(oldValue, Boolean.TRUE);
+                return;
+            }
+        }
+        recycle(oldValue);
+    }
+
+    private void recycle(Bitmap bitmap) {
+        final AWSBitmapPool bitmapPool = mBitmapPool;
+        if (bitmapPool != null) {
+            bitmapPool.put(bitmap);
+        }
     }
 
     @Override
@@ -50,6 +149,9 @@ public class AWSBitmapCache extends AWSCache<String, Bitmap>
 
     @Override
     public void putBitmap(String url, Bitmap bitmap) {
+        synchronized (mReferences) {
+            mRemoved.remove(bitmap);
+        }
         put(url, bitmap);
     }
 
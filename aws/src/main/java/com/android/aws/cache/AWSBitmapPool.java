@@ -0,0 +1,186 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps, bucketed by allocation size, that decodes reuse through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}. Only bitmaps that nobody displays
+ * anymore are handed to the pool, see {@link AWSBitmapCache#release(Bitmap)}. Reuse of a bitmap
+ * with a different size needs KitKat, so the pool stays empty on older releases.
+ */
+public class AWSBitmapPool {
+
+    // Never reuse a bitmap more than this many times larger than needed.
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static final long DEFAULT_MAX_SIZE = Runtime.getRuntime().maxMemory() / 16;
+
+    private static volatile AWSBitmapPool sInstance = null;
+
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<>();
+    private final LinkedList<Bitmap> mInsertionOrder = new LinkedList<>();
+    private long mMaxSize;
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    public AWSBitmapPool(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public static AWSBitmapPool getInstance() {
+        if (sInstance == null) {
+            synchronized (AWSBitmapPool.class) {
+                if (sInstance == null) {
+                    sInstance = new AWSBitmapPool(DEFAULT_MAX_SIZE);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!isSupported() || width <= 0 || height <= 0) {
+            return null;
+        }
+        final int size = width * height * getBytesPerPixel(config);
+        Integer key = mBuckets.ceilingKey(size);
+        if (key == null || key > size * MAX_SIZE_MULTIPLE) {
+            mMissCount++;
+            return null;
+        }
+        Bitmap bitmap = removeFromBucket(key);
+        mInsertionOrder.remove(bitmap);
+        mSize -= key;
+        mHitCount++;
+        return bitmap;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized void put(Bitmap bitmap) {
+        if (!isSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final int size = bitmap.getAllocationByteCount();
+        if (size > mMaxSize) {
+            return;
+        }
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new LinkedList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mInsertionOrder.add(bitmap);
+        mSize += size;
+        mPutCount++;
+        trimToSize(mMaxSize);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized void trimToSize(long maxSize) {
+        for (Iterator<Bitmap> iterator = mInsertionOrder.iterator();
+             mSize > maxSize && iterator.hasNext(); ) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            final int size = bitmap.getAllocationByteCount();
+            LinkedList<Bitmap> bucket = mBuckets.get(size);
+            if (bucket != null && bucket.remove(bitmap) && bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mSize -= size;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    public synchronized void resize(long maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized long maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    private Bitmap removeFromBucket(Integer key) {
+        LinkedList<Bitmap> bucket = mBuckets.get(key);
+        Bitmap bitmap = bucket.removeFirst();
+        if (bucket.isEmpty()) {
+            mBuckets.remove(key);
+        }
+        return bitmap;
+    }
+
+    @SuppressWarnings("deprecation")
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AWSBitmapPool[maxSize=" + mMaxSize + ",size=" + mSize + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",puts=" + mPutCount + ",evictions="
+                + mEvictionCount + "]";
+    }
+}
@@ -21,25 +21,57 @@ import android.annotation.SuppressLint;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size bounded cache. Reads are lock-free: hits are looked up in a concurrent map and recorded
+ * into striped, lossy read buffers, which are replayed against the eviction order in batches by
+ * whichever thread holds the lock next. Writes and evictions are serialized by that lock.
+ */
 public class AWSCache<K, V> {
+    private final ConcurrentHashMap<K, V> data;
     private final LinkedHashMap<K, V> map;
+    private final WTinyLfuPolicy<K, V> policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReadBuffer<K>[] readBuffers;
 
-    private int size;
-    private int maxSize;
+    private volatile int size;
+    private volatile int maxSize;
 
-    private int putCount;
-    private int createCount;
-    private int evictionCount;
-    private int hitCount;
-    private int missCount;
+    private volatile int putCount;
+    private volatile int createCount;
+    private volatile int evictionCount;
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter missCount = new StripedCounter();
 
     public AWSCache(int maxSize) {
+        this(maxSize, EvictionPolicy.LRU);
+    }
+
+    @SuppressWarnings("unchecked")
+    public AWSCache(int maxSize, EvictionPolicy evictionPolicy) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
+        if (evictionPolicy == null) {
+            throw new NullPointerException("evictionPolicy == null");
+        }
         this.maxSize = maxSize;
-        this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+        this.data = new ConcurrentHashMap<K, V>(16, 0.75f, StripedCounter.STRIPES);
+        if (evictionPolicy == EvictionPolicy.W_TINY_LFU) {
+            this.map = null;
+            this.policy = new WTinyLfuPolicy<K, V>(maxSize);
+        } else {
+            this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+            this.policy = null;
+        }
+        this.readBuffers = new ReadBuffer[StripedCounter.STRIPES];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<K>();
+        }
     }
 
     public void resize(int maxSize) {
@@ -47,8 +79,14 @@ public class AWSCache<K, V> {
             throw new IllegalArgumentException("maxSize <= 0");
         }
 
-        synchronized (this) {
+        lock.lock();
+        try {
             this.maxSize = maxSize;
+            if (policy != null) {
+                policy.setMaxSize(maxSize);
+            }
+        } finally {
+            lock.unlock();
         }
         trimToSize(maxSize);
     }
@@ -58,31 +96,39 @@ public class AWSCache<K, V> {
             throw new NullPointerException("key == null");
         }
 
-        V mapValue;
-        synchronized (this) {
-            mapValue = map.get(key);
-            if (mapValue != null) {
-                hitCount++;
-                return mapValue;
+        V mapValue = data.get(key);
+        if (mapValue != null) {
+            hitCount.increment();
+            if (readBuffers[StripedCounter.stripe()].offer(key) && lock.tryLock()) {
+                try {
+                    drainReadBuffers();
+                } finally {
+                    lock.unlock();
+                }
             }
-            missCount++;
+            return mapValue;
         }
+        missCount.increment();
 
         V createdValue = create(key);
         if (createdValue == null) {
             return null;
         }
 
-        synchronized (this) {
+        lock.lock();
+        try {
+            drainReadBuffers();
             createCount++;
-            mapValue = map.put(key, createdValue);
+            mapValue = putEntry(key, createdValue);
 
             if (mapValue != null) {
                 // There was a conflict so undo that last put
-                map.put(key, mapValue);
+                putEntry(key, mapValue);
             } else {
                 size += safeSizeOf(key, createdValue);
             }
+        } finally {
+            lock.unlock();
         }
 
         if (mapValue != null) {
@@ -94,19 +140,36 @@ public class AWSCache<K, V> {
         }
     }
 
+    /**
+     * Returns the value for the key without recording a hit or miss or an access to it.
+     */
+    public final V peek(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return data.get(key);
+    }
+
     public final V put(K key, V value) {
         if (key == null || value == null) {
             throw new NullPointerException("key == null || value == null");
         }
 
         V previous;
-        synchronized (this) {
+        lock.lock();
+        try {
+            drainReadBuffers();
             putCount++;
             size += safeSizeOf(key, value);
-            previous = map.put(key, value);
+            previous = putEntry(key, value);
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
             }
+            if (policy != null) {
+                policy.rebalance(size, this.maxSize);
+            }
+        } finally {
+            lock.unlock();
         }
 
         if (previous != null) {
@@ -121,22 +184,31 @@ public class AWSCache<K, V> {
         while (true) {
             K key;
             V value;
-            synchronized (this) {
-                if (size < 0 || (map.isEmpty() && size != 0)) {
+            lock.lock();
+            try {
+                drainReadBuffers();
+                final boolean isEmpty = policy != null ? policy.isEmpty() : map.isEmpty();
+                if (size < 0 || (isEmpty && size != 0)) {
                     throw new IllegalStateException(getClass().getName()
                             + ".sizeOf() is reporting inconsistent results!");
                 }
 
-                if (size <= maxSize || map.isEmpty()) {
+                if (size <= maxSize || isEmpty) {
                     break;
                 }
 
-                Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
+                Map.Entry<K, V> toEvict = policy != null
+                        ? policy.evict() : map.entrySet().iterator().next();
                 key = toEvict.getKey();
                 value = toEvict.getValue();
-                map.remove(key);
+                if (policy == null) {
+                    map.remove(key);
+                }
+                data.remove(key);
                 size -= safeSizeOf(key, value);
                 evictionCount++;
+            } finally {
+                lock.unlock();
             }
 
             entryRemoved(true, key, value, null);
@@ -149,11 +221,16 @@ public class AWSCache<K, V> {
         }
 
         V previous;
-        synchronized (this) {
-            previous = map.remove(key);
+        lock.lock();
+        try {
+            drainReadBuffers();
+            previous = policy != null ? policy.remove(key) : map.remove(key);
             if (previous != null) {
+                data.remove(key);
                 size -= safeSizeOf(key, previous);
             }
+        } finally {
+            lock.unlock();
         }
 
         if (previous != null) {
@@ -163,6 +240,30 @@ public class AWSCache<K, V> {
         return previous;
     }
 
+    private V putEntry(K key, V value) {
+        data.put(key, value);
+        if (policy != null) {
+            return policy.put(key, value, safeSizeOf(key, value));
+        }
+        return map.put(key, value);
+    }
+
+    /**
+     * Replays the recorded hits against the eviction order. Must hold the lock.
+     */
+    private void drainReadBuffers() {
+        for (ReadBuffer<K> buffer : readBuffers) {
+            K key;
+            while ((key = buffer.poll()) != null) {
+                if (policy != null) {
+                    policy.get(key);
+                } else {
+                    map.get(key);
+                }
+            }
+        }
+    }
+
     protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
     }
 
@@ -186,44 +287,97 @@ public class AWSCache<K, V> {
         trimToSize(-1);
     }
 
-    public synchronized final int size() {
+    public final int size() {
         return size;
     }
 
-    public synchronized final int maxSize() {
+    public final int maxSize() {
         return maxSize;
     }
 
-    public synchronized final int hitCount() {
-        return hitCount;
+    public final int hitCount() {
+        return hitCount.sum();
     }
 
-    public synchronized final int missCount() {
-        return missCount;
+    public final int missCount() {
+        return missCount.sum();
     }
 
-    public synchronized final int createCount() {
+    public final int createCount() {
         return createCount;
     }
 
-    public synchronized final int putCount() {
+    public final int putCount() {
         return putCount;
     }
 
-    public synchronized final int evictionCount() {
+    public final int evictionCount() {
         return evictionCount;
     }
 
-    public synchronized final Map<K, V> snapshot() {
-        return new LinkedHashMap<K, V>(map);
+    public final Map<K, V> snapshot() {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            return policy != null ? policy.snapshot() : new LinkedHashMap<K, V>(map);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @SuppressLint("DefaultLocale")
     @Override
-    public synchronized final String toString() {
-        int accesses = hitCount + missCount;
-        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+    public final String toString() {
+        int hits = hitCount();
+        int accesses = hits + missCount();
+        int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
         return String.format("AWSCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
-                maxSize, hitCount, missCount, hitPercent);
+                maxSize, hits, accesses - hits, hitPercent);
+    }
+
+    /**
+     * Bounded ring of keys that were read, written by any thread and drained under the lock.
+     * Keys are dropped when the ring is full, since losing some access order is cheaper than
+     * waiting for it.
+     */
+    private static final class ReadBuffer<K> {
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+        private static final int DRAIN_THRESHOLD = SIZE / 2;
+
+        private final AtomicReferenceArray<K> mSlots = new AtomicReferenceArray<K>(SIZE);
+        private final AtomicLong mWrites = new AtomicLong();
+        private volatile long mReads;
+
+        /**
+         * Returns true once the buffer holds enough keys to be worth draining.
+         */
+        boolean offer(K key) {
+            final long writes = mWrites.get();
+            final long pending = writes - mReads;
+            if (pending >= SIZE) {
+                return true;
+            }
+            if (mWrites.compareAndSet(writes, writes + 1)) {
+                mSlots.lazySet((int) (writes & MASK), key);
+            }
+            return pending + 1 >= DRAIN_THRESHOLD;
+        }
+
+        K poll() {
+            final long reads = mReads;
+            if (reads == mWrites.get()) {
+                return null;
+            }
+            final int index = (int) (reads & MASK);
+            final K key = mSlots.get(index);
+            if (key == null) {
+                // The writer claimed the slot but has not published the key yet.
+                return null;
+            }
+            mSlots.lazySet(index, null);
+            mReads = reads + 1;
+            return key;
+        }
     }
 }
@@ -0,0 +1,209 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.internal.Util;
+import okhttp3.internal.cache.DiskLruCache;
+import okhttp3.internal.io.FileSystem;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Disk tier for already decoded and downsampled bitmaps. Pixels are stored raw, next to their
+ * width, height and config, so a hit costs one sequential read and a copy instead of a full
+ * decode and rescale. Entries live in their own LRU journal with their own size budget. All
+ * methods do disk I/O and must be called off the main thread.
+ */
+public class AWSDiskBitmapCache {
+
+    private static final int APP_VERSION = 1;
+    private static final int VALUE_COUNT = 1;
+    // Width, height and config name length precede the config name and the pixels.
+    private static final int HEADER_INT_COUNT = 3;
+    // Larger pixel buffers are not kept around between reads.
+    private static final int MAX_REUSED_BUFFER_BYTES = 2 * 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> sReadBuffer = new ThreadLocal<byte[]>();
+
+    private final DiskLruCache mDiskLruCache;
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    public AWSDiskBitmapCache(File directory, long maxSize) {
+        mDiskLruCache = DiskLruCache.create(FileSystem.SYSTEM, directory, APP_VERSION,
+                VALUE_COUNT, maxSize);
+    }
+
+    public Bitmap get(String key) {
+        DiskLruCache.Snapshot snapshot = null;
+        BufferedSource source = null;
+        try {
+            snapshot = mDiskLruCache.get(diskKey(key));
+            if (snapshot == null) {
+                mMissCount.incrementAndGet();
+                return null;
+            }
+            source = Okio.buffer(snapshot.getSource(0));
+            final int width = source.readInt();
+            final int height = source.readInt();
+            final int configLength = source.readInt();
+            final Bitmap.Config config = Bitmap.Config.valueOf(source.readUtf8(configLength));
+            final long pixelBytes = (long) width * height
+                    * AWSBitmapPool.getBytesPerPixel(config);
+            if (width <= 0 || height <= 0 || pixelBytes > Integer.MAX_VALUE
+                    || snapshot.getLength(0) != 4 * HEADER_INT_COUNT + configLength + pixelBytes) {
+                throw new IOException("Corrupt bitmap entry " + key);
+            }
+            final byte[] pixels = readPixels(source, (int) pixelBytes);
+            final Bitmap bitmap = getReusableBitmap(width, height, config);
+            try {
+                if ((long) bitmap.getRowBytes() * height != pixelBytes) {
+                    throw new IOException("Unexpected row bytes for " + key);
+                }
+                bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels, 0, (int) pixelBytes));
+            } catch (Exception e) {
+                AWSBitmapPool.getInstance().put(bitmap);
+                throw e;
+            }
+            mHitCount.incrementAndGet();
+            return bitmap;
+        } catch (Exception e) {
+            mMissCount.incrementAndGet();
+            remove(key);
+            return null;
+        } finally {
+            Util.closeQuietly(source);
+            Util.closeQuietly(snapshot);
+        }
+    }
+
+    // Reads exactly byteCount bytes, into a per-thread buffer unless that would be too large.
+    private static byte[] readPixels(BufferedSource source, int byteCount) throws IOException {
+        byte[] buffer = sReadBuffer.get();
+        if (buffer == null || buffer.length < byteCount) {
+            buffer = new byte[byteCount];
+            if (byteCount <= MAX_REUSED_BUFFER_BYTES) {
+                sReadBuffer.set(buffer);
+            }
+        }
+        int offset = 0;
+        while (offset < byteCount) {
+            final int read = source.read(buffer, offset, byteCount - offset);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return buffer;
+    }
+
+    @SuppressLint("NewApi")
+    private static Bitmap getReusableBitmap(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = AWSBitmapPool.getInstance().get(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        if (bitmap == null || bitmap.getConfig() == null || bitmap.isRecycled()) {
+            return;
+        }
+        DiskLruCache.Editor editor = null;
+        BufferedSink sink = null;
+        try {
+            editor = mDiskLruCache.edit(diskKey(key));
+            if (editor == null) {
+                return;
+            }
+            ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+            bitmap.copyPixelsToBuffer(pixels);
+            final String config = bitmap.getConfig().name();
+            sink = Okio.buffer(editor.newSink(0));
+            sink.writeInt(bitmap.getWidth());
+            sink.writeInt(bitmap.getHeight());
+            sink.writeInt(config.length());
+            sink.writeUtf8(config);
+            sink.write(pixels.array(), 0, pixels.position());
+            sink.close();
+            sink = null;
+            editor.commit();
+            editor = null;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            Util.closeQuietly(sink);
+            if (editor != null) {
+                editor.abortUnlessCommitted();
+            }
+        }
+    }
+
+    public void remove(String key) {
+        try {
+            mDiskLruCache.remove(diskKey(key));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void evictAll() {
+        try {
+            mDiskLruCache.evictAll();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public long size() {
+        try {
+            return mDiskLruCache.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public long maxSize() {
+        return mDiskLruCache.getMaxSize();
+    }
+
+    public int hitCount() {
+        return mHitCount.get();
+    }
+
+    public int missCount() {
+        return mMissCount.get();
+    }
+
+    private static String diskKey(String key) {
+        return ByteString.encodeUtf8(key).md5().hex();
+    }
+}
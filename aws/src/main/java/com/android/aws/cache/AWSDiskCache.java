@@ -0,0 +1,154 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.android.aws.common.AWSConstants;
+import com.android.aws.core.Core;
+import com.android.aws.internal.InternalNetworking;
+import com.android.aws.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+
+/**
+ * Sizing, statistics and trimming of the OkHttp disk cache used by AWS.
+ */
+public final class AWSDiskCache {
+
+    private static final String PREFS_NAME = "aws_disk_cache";
+    private static final String KEY_HIT_RATE = "hitRate";
+
+    private static final AtomicInteger sConditionalHitCount = new AtomicInteger();
+    private static final AtomicLong sTrimmedBytes = new AtomicLong();
+
+    private AWSDiskCache() {
+
+    }
+
+    /**
+     * Returns a cache size between minSize and maxSize: a share of the free space on the cache
+     * partition, scaled up or down by the hit rate observed in previous sessions.
+     */
+    public static long getAdaptiveSize(Context context, long minSize, long maxSize) {
+        File directory = Utils.getDiskCacheDir(context, AWSConstants.CACHE_DIR_NAME);
+        File parent = directory.exists() ? directory : context.getCacheDir();
+        long size = parent.getUsableSpace() / AWSConstants.DISK_CACHE_FREE_SPACE_DIVISOR;
+        float hitRate = getPreferences(context).getFloat(KEY_HIT_RATE, -1f);
+        if (hitRate >= 0) {
+            size = (long) (size * (0.5f + hitRate));
+        }
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    public static void onConditionalHit() {
+        sConditionalHitCount.incrementAndGet();
+    }
+
+    public static DiskCacheStats getStats() {
+        Cache cache = InternalNetworking.sHttpClient != null
+                ? InternalNetworking.sHttpClient.cache() : null;
+        if (cache == null) {
+            return new DiskCacheStats(0, 0, 0, 0, 0, 0, sTrimmedBytes.get());
+        }
+        long size;
+        try {
+            size = cache.size();
+        } catch (IOException e) {
+            size = -1;
+        }
+        final int conditionalHitCount = sConditionalHitCount.get();
+        return new DiskCacheStats(size, cache.maxSize(), cache.requestCount(),
+                Math.max(0, cache.hitCount() - conditionalHitCount), conditionalHitCount,
+                cache.networkCount(), sTrimmedBytes.get());
+    }
+
+    /**
+     * Trims the disk cache down to maxBytes on a background thread, least recently used
+     * entries first, and records the hit rate of this session for adaptive sizing.
+     */
+    public static void trim(final long maxBytes) {
+        Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                trimNow(maxBytes);
+                persistHitRate();
+            }
+        });
+    }
+
+    private static void trimNow(long maxBytes) {
+        Cache cache = InternalNetworking.sHttpClient != null
+                ? InternalNetworking.sHttpClient.cache() : null;
+        if (cache == null) {
+            return;
+        }
+        try {
+            final long initialSize = cache.size();
+            if (initialSize <= maxBytes) {
+                return;
+            }
+            if (maxBytes <= 0) {
+                cache.evictAll();
+            } else {
+                for (Iterator<String> urls = cache.urls(); urls.hasNext() && cache.size() > maxBytes; ) {
+                    urls.next();
+                    urls.remove();
+                }
+            }
+            sTrimmedBytes.addAndGet(Math.max(0, initialSize - cache.size()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records the hit rate of this session on a background thread, for adaptive sizing.
+     */
+    public static void saveHitRate() {
+        Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                persistHitRate();
+            }
+        });
+    }
+
+    private static void persistHitRate() {
+        Context context = InternalNetworking.getContext();
+        DiskCacheStats stats = getStats();
+        if (context == null || stats.getRequestCount() < AWSConstants.DISK_CACHE_MIN_REQUESTS_FOR_HIT_RATE) {
+            return;
+        }
+        SharedPreferences preferences = getPreferences(context);
+        float previous = preferences.getFloat(KEY_HIT_RATE, -1f);
+        float hitRate = previous < 0 ? stats.getHitRate() : (previous + stats.getHitRate()) / 2;
+        preferences.edit().putFloat(KEY_HIT_RATE, hitRate).apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
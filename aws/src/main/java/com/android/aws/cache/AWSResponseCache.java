@@ -0,0 +1,221 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import android.os.SystemClock;
+
+import com.android.aws.common.AWSConstants;
+import com.android.aws.common.AWSRequest;
+import com.android.aws.common.Method;
+import com.android.aws.common.RequestType;
+import com.android.aws.common.ResponseType;
+import com.android.aws.metrics.AWSMetrics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okhttp3.Response;
+
+/**
+ * Memory cache of responses, kept in front of the OkHttp disk cache so that hot GET requests
+ * skip the disk read. Entries are keyed by url, response type and target type, honour the Vary
+ * header of the response and live only as long as the response is fresh according to its
+ * max-age and the max-age set on the request. Only text is kept: strings are shared as they are
+ * immutable, and JSON is parsed again on every hit so that no caller sees another caller's
+ * changes. Parsed objects are not cached, since they cannot be copied.
+ */
+public class AWSResponseCache extends AWSCache<String, AWSResponseCache.Entry> {
+
+    private static volatile AWSResponseCache sInstance = null;
+
+    public AWSResponseCache(int maxEntries) {
+        super(maxEntries);
+    }
+
+    public static AWSResponseCache getInstance() {
+        return sInstance;
+    }
+
+    public static void enable(int maxEntries) {
+        synchronized (AWSResponseCache.class) {
+            if (sInstance == null) {
+                sInstance = new AWSResponseCache(maxEntries);
+                AWSMetrics.getInstance().registerCache(AWSConstants.RESPONSE_CACHE_NAME, sInstance);
+            } else {
+                sInstance.resize(maxEntries);
+            }
+        }
+    }
+
+    public static void disable() {
+        synchronized (AWSResponseCache.class) {
+            if (sInstance != null) {
+                sInstance.evictAll();
+                sInstance = null;
+            }
+        }
+    }
+
+    public static boolean isCacheable(AWSRequest request) {
+        if (request.getMethod() != Method.GET
+                || request.getRequestType() != RequestType.SIMPLE
+                || request.needsOkHttpResponse()) {
+            return false;
+        }
+        ResponseType responseType = request.getResponseAs();
+        if (responseType != ResponseType.STRING && responseType != ResponseType.JSON_OBJECT
+                && responseType != ResponseType.JSON_ARRAY) {
+            return false;
+        }
+        CacheControl cacheControl = request.getCacheControl();
+        return cacheControl == null || (!cacheControl.noStore() && !cacheControl.noCache());
+    }
+
+    public Object getResult(AWSRequest request) {
+        if (!isCacheable(request)) {
+            return null;
+        }
+        final String key = getKey(request);
+        Entry entry = get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.isFresh(request) || !entry.matchesVary(request.getHeaders())) {
+            remove(key);
+            return null;
+        }
+        try {
+            switch (request.getResponseAs()) {
+                case JSON_OBJECT:
+                    return new JSONObject(entry.mText);
+                case JSON_ARRAY:
+                    return new JSONArray(entry.mText);
+                default:
+                    return entry.mText;
+            }
+        } catch (JSONException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    public void putResult(AWSRequest request, Response response, Object result) {
+        if (result == null || !isCacheable(request)) {
+            return;
+        }
+        CacheControl responseCacheControl = response.cacheControl();
+        if (responseCacheControl.noStore() || responseCacheControl.noCache()) {
+            return;
+        }
+        long lifetimeMillis = -1;
+        if (responseCacheControl.maxAgeSeconds() >= 0) {
+            lifetimeMillis = responseCacheControl.maxAgeSeconds() * 1000L;
+        }
+        CacheControl requestCacheControl = request.getCacheControl();
+        if (requestCacheControl != null && requestCacheControl.maxAgeSeconds() >= 0) {
+            long requestLifetimeMillis = requestCacheControl.maxAgeSeconds() * 1000L;
+            lifetimeMillis = lifetimeMillis < 0 ? requestLifetimeMillis
+                    : Math.min(lifetimeMillis, requestLifetimeMillis);
+        }
+        final long ageMillis = getAgeMillis(response);
+        if (lifetimeMillis <= ageMillis) {
+            return;
+        }
+        Map<String, String> varyValues = new HashMap<>();
+        for (String name : response.headers().values("Vary")) {
+            for (String field : name.split(",")) {
+                field = field.trim();
+                if (field.equals("*")) {
+                    return;
+                }
+                if (field.length() > 0) {
+                    varyValues.put(field, getHeader(request.getHeaders(), field));
+                }
+            }
+        }
+        // Stored before the result is delivered, so no listener has changed it yet.
+        put(getKey(request), new Entry(result.toString(), ageMillis, lifetimeMillis,
+                varyValues));
+    }
+
+    private static long getAgeMillis(Response response) {
+        long ageMillis = Math.max(0, System.currentTimeMillis() - response.receivedResponseAtMillis());
+        String age = response.header("Age");
+        if (age != null) {
+            try {
+                ageMillis += Long.parseLong(age.trim()) * 1000L;
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return ageMillis;
+    }
+
+    private static String getKey(AWSRequest request) {
+        return request.getUrl() + "#" + request.getResponseAs()
+                + (request.getType() != null ? "#" + request.getType() : "");
+    }
+
+    private static String getHeader(Headers headers, String name) {
+        return headers != null ? headers.get(name) : null;
+    }
+
+    static final class Entry {
+
+        final String mText;
+        final long mAgeAtStoreMillis;
+        final long mLifetimeMillis;
+        final long mStoredAt;
+        final Map<String, String> mVaryValues;
+
+        Entry(String text, long ageAtStoreMillis, long lifetimeMillis,
+              Map<String, String> varyValues) {
+            mText = text;
+            mAgeAtStoreMillis = ageAtStoreMillis;
+            mLifetimeMillis = lifetimeMillis;
+            mStoredAt = SystemClock.elapsedRealtime();
+            mVaryValues = varyValues;
+        }
+
+        boolean isFresh(AWSRequest request) {
+            long lifetimeMillis = mLifetimeMillis;
+            CacheControl cacheControl = request.getCacheControl();
+            if (cacheControl != null && cacheControl.maxAgeSeconds() >= 0) {
+                lifetimeMillis = Math.min(lifetimeMillis, cacheControl.maxAgeSeconds() * 1000L);
+            }
+            long ageMillis = mAgeAtStoreMillis + SystemClock.elapsedRealtime() - mStoredAt;
+            return ageMillis < lifetimeMillis;
+        }
+
+        boolean matchesVary(Headers headers) {
+            for (Map.Entry<String, String> entry : mVaryValues.entrySet()) {
+                String value = getHeader(headers, entry.getKey());
+                if (value == null ? entry.getValue() != null : !value.equals(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+public class DiskCacheStats {
+
+    private final long mSize;
+    private final long mMaxSize;
+    private final int mRequestCount;
+    private final int mHitCount;
+    private final int mConditionalHitCount;
+    private final int mNetworkCount;
+    private final long mTrimmedBytes;
+
+    DiskCacheStats(long size, long maxSize, int requestCount, int hitCount,
+                   int conditionalHitCount, int networkCount, long trimmedBytes) {
+        mSize = size;
+        mMaxSize = maxSize;
+        mRequestCount = requestCount;
+        mHitCount = hitCount;
+        mConditionalHitCount = conditionalHitCount;
+        mNetworkCount = networkCount;
+        mTrimmedBytes = trimmedBytes;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * Responses served from the cache without touching the network.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Responses served from the cache after the server answered a conditional request with 304.
+     */
+    public int getConditionalHitCount() {
+        return mConditionalHitCount;
+    }
+
+    public int getMissCount() {
+        return Math.max(0, mRequestCount - mHitCount - mConditionalHitCount);
+    }
+
+    public int getNetworkCount() {
+        return mNetworkCount;
+    }
+
+    /**
+     * Bytes evicted by {@link AWSDiskCache#trim(long)}. Entries dropped by the cache's own LRU
+     * eviction when it is full are not reported by OkHttp and so are not included.
+     */
+    public long getTrimmedBytes() {
+        return mTrimmedBytes;
+    }
+
+    public float getHitRate() {
+        return mRequestCount == 0 ? 0f : (float) (mHitCount + mConditionalHitCount) / mRequestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "DiskCacheStats{" +
+                "size=" + mSize +
+                ", maxSize=" + mMaxSize +
+                ", requestCount=" + mRequestCount +
+                ", hitCount=" + mHitCount +
+                ", conditionalHitCount=" + mConditionalHitCount +
+                ", missCount=" + getMissCount() +
+                ", networkCount=" + mNetworkCount +
+                ", trimmedBytes=" + mTrimmedBytes +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+/**
+ * Count-min sketch of how often keys were accessed. Counters are int cells that saturate at 15
+ * and are halved periodically so that old popularity fades. Not thread safe.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final int MAX_COUNT = 15;
+    private static final int MIN_WIDTH = 16;
+
+    private int[] mTable = new int[MIN_WIDTH];
+    private int mSampleSize = 10 * MIN_WIDTH;
+    private int mAdditions;
+
+    void ensureCapacity(int maximumEntries) {
+        final int width = Math.max(MIN_WIDTH, Integer.highestOneBit(Math.max(1, maximumEntries - 1)) << 1);
+        if (width <= mTable.length || width <= 0) {
+            return;
+        }
+        mTable = new int[width];
+        mSampleSize = 10 * width;
+        mAdditions = 0;
+    }
+
+    int frequency(Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, mTable[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = indexOf(hash, i);
+            if (mTable[index] < MAX_COUNT) {
+                mTable[index]++;
+                added = true;
+            }
+        }
+        if (added && ++mAdditions >= mSampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] >>>= 1;
+        }
+        mAdditions /= 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & (mTable.length - 1);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counter spread over one cell per stripe of threads so that concurrent increments rarely touch
+ * the same cache line. Stands in for LongAdder, which is not available on every API level.
+ */
+final class StripedCounter {
+
+    static final int STRIPES;
+
+    // Cells are padded apart so that two stripes never share a 64 byte cache line.
+    private static final int PADDING = 16;
+
+    static {
+        final int target = Math.min(64, 4 * Runtime.getRuntime().availableProcessors());
+        STRIPES = Integer.highestOneBit(Math.max(1, target - 1)) << 1;
+    }
+
+    private final AtomicIntegerArray mCells = new AtomicIntegerArray(STRIPES * PADDING);
+
+    static int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) & (STRIPES - 1);
+    }
+
+    void increment() {
+        mCells.getAndIncrement(stripe() * PADDING);
+    }
+
+    int sum() {
+        int sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.cache;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Entry storage of an {@link AWSCache} using {@link EvictionPolicy#W_TINY_LFU}. Entries are
+ * split into an LRU window of 1% of the capacity and a main region of probation and protected
+ * segments. Entries pushed out of the window compete with the probation LRU entry on their
+ * sketched frequency, and probation entries that are hit again move to protected. Weights are
+ * the {@link AWSCache#sizeOf} of each entry. Guarded by the owning cache.
+ */
+final class WTinyLfuPolicy<K, V> {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final LinkedHashMap<K, Node<V>> mWindow = new LinkedHashMap<K, Node<V>>(0, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> mProbation = new LinkedHashMap<K, Node<V>>(0, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> mProtected = new LinkedHashMap<K, Node<V>>(0, 0.75f, true);
+    private final FrequencySketch mSketch = new FrequencySketch();
+
+    private int mWindowMaxSize;
+    private int mProtectedMaxSize;
+    private int mWindowSize;
+    private int mProtectedSize;
+
+    WTinyLfuPolicy(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    void setMaxSize(int maxSize) {
+        mWindowMaxSize = Math.max(1, (int) ((long) maxSize * WINDOW_PERCENT / 100));
+        mProtectedMaxSize = (int) ((long) (maxSize - mWindowMaxSize) * PROTECTED_PERCENT / 100);
+    }
+
+    V get(K key) {
+        mSketch.increment(key);
+        Node<V> node = mWindow.get(key);
+        if (node == null) {
+            node = mProtected.get(key);
+        }
+        if (node == null) {
+            node = mProbation.remove(key);
+            if (node != null) {
+                mProtected.put(key, node);
+                mProtectedSize += node.weight;
+                demoteProtected();
+            }
+        }
+        return node != null ? node.value : null;
+    }
+
+    V put(K key, V value, int weight) {
+        mSketch.ensureCapacity(size() + 1);
+        mSketch.increment(key);
+        Node<V> node = new Node<V>(value, weight);
+        Node<V> previous = mWindow.get(key);
+        if (previous != null) {
+            mWindow.put(key, node);
+            mWindowSize += weight - previous.weight;
+        } else if ((previous = mProtected.get(key)) != null) {
+            mProtected.put(key, node);
+            mProtectedSize += weight - previous.weight;
+            demoteProtected();
+        } else if ((previous = mProbation.get(key)) != null) {
+            mProbation.put(key, node);
+        } else {
+            mWindow.put(key, node);
+            mWindowSize += weight;
+        }
+        return previous != null ? previous.value : null;
+    }
+
+    V remove(K key) {
+        Node<V> node = mWindow.remove(key);
+        if (node != null) {
+            mWindowSize -= node.weight;
+            return node.value;
+        }
+        node = mProtected.remove(key);
+        if (node != null) {
+            mProtectedSize -= node.weight;
+            return node.value;
+        }
+        node = mProbation.remove(key);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Moves entries beyond the window size into probation while the cache is not full, so that
+     * they only have to win admission once space is needed.
+     */
+    void rebalance(int size, int maxSize) {
+        while (mWindowSize > mWindowMaxSize && mWindow.size() > 1 && size <= maxSize) {
+            moveToProbation(eldest(mWindow));
+        }
+    }
+
+    /**
+     * Removes the entry to evict: either the candidate leaving the window or the probation
+     * victim, whichever was used less often.
+     */
+    Map.Entry<K, V> evict() {
+        Map.Entry<K, Node<V>> candidate = mWindowSize > mWindowMaxSize ? eldest(mWindow) : null;
+        Map.Entry<K, Node<V>> victim = eldest(mProbation);
+        if (victim == null) {
+            victim = eldest(mProtected);
+        }
+        if (candidate == null) {
+            candidate = victim != null ? null : eldest(mWindow);
+            if (candidate == null) {
+                return victim != null ? removeEntry(victim) : null;
+            }
+            return removeEntry(candidate);
+        }
+        if (victim == null
+                || mSketch.frequency(candidate.getKey()) <= mSketch.frequency(victim.getKey())) {
+            return removeEntry(candidate);
+        }
+        Map.Entry<K, V> evicted = removeEntry(victim);
+        moveToProbation(candidate);
+        return evicted;
+    }
+
+    boolean isEmpty() {
+        return mWindow.isEmpty() && mProbation.isEmpty() && mProtected.isEmpty();
+    }
+
+    int size() {
+        return mWindow.size() + mProbation.size() + mProtected.size();
+    }
+
+    Map<K, V> snapshot() {
+        Map<K, V> snapshot = new LinkedHashMap<K, V>();
+        copyInto(mProbation, snapshot);
+        copyInto(mProtected, snapshot);
+        copyInto(mWindow, snapshot);
+        return snapshot;
+    }
+
+    private void demoteProtected() {
+        while (mProtectedSize > mProtectedMaxSize && mProtected.size() > 1) {
+            Map.Entry<K, Node<V>> eldest = eldest(mProtected);
+            mProtected.remove(eldest.getKey());
+            mProtectedSize -= eldest.getValue().weight;
+            mProbation.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void moveToProbation(Map.Entry<K, Node<V>> entry) {
+        mWindow.remove(entry.getKey());
+        mWindowSize -= entry.getValue().weight;
+        mProbation.put(entry.getKey(), entry.getValue());
+    }
+
+    private Map.Entry<K, V> removeEntry(Map.Entry<K, Node<V>> entry) {
+        final K key = entry.getKey();
+        final V value = entry.getValue().value;
+        remove(key);
+        return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+    }
+
+    private static <K, V> Map.Entry<K, Node<V>> eldest(LinkedHashMap<K, Node<V>> segment) {
+        Iterator<Map.Entry<K, Node<V>>> iterator = segment.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<K, Node<V>> eldest = iterator.next();
+        return new AbstractMap.SimpleImmutableEntry<K, Node<V>>(eldest.getKey(), eldest.getValue());
+    }
+
+    private static <K, V> void copyInto(LinkedHashMap<K, Node<V>> segment, Map<K, V> snapshot) {
+        for (Map.Entry<K, Node<V>> entry : segment.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().value);
+        }
+    }
+
+    private static final class Node<V> {
+        final V value;
+        final int weight;
+
+        Node(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -19,8 +19,13 @@ package com.android.aws.common;
 
 public final class AWSConstants {
     public static final int MAX_CACHE_SIZE = 10 * 1024 * 1024;
+    public static final int DISK_CACHE_FREE_SPACE_DIVISOR = 50;
+    public static final int DISK_CACHE_MIN_REQUESTS_FOR_HIT_RATE = 50;
     public static final int UPDATE = 0x01;
+    public static final long DEFAULT_PROGRESS_MIN_BYTES = 64 * 1024;
+    public static final long DEFAULT_PROGRESS_MIN_INTERVAL_MS = 100;
     public static final String CACHE_DIR_NAME = "cache_an";
+    public static final String BITMAP_DISK_CACHE_DIR_NAME = "cache_an_bitmap";
     public static final String CONNECTION_ERROR = "connectionError";
     public static final String RESPONSE_FROM_SERVER_ERROR = "responseFromServerError";
     public static final String REQUEST_CANCELLED_ERROR = "requestCancelledError";
@@ -29,4 +34,6 @@ public final class AWSConstants {
     public static final String USER_AGENT = "User-Agent";
     public static final String SUCCESS = "success";
     public static final String OPTIONS = "OPTIONS";
+    public static final String BITMAP_CACHE_NAME = "bitmap";
+    public static final String RESPONSE_CACHE_NAME = "response";
 }
@@ -17,16 +17,21 @@
 
 package com.android.aws.common;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.widget.ImageView;
 
 import com.android.aws.core.Core;
 import com.android.aws.error.AWSError;
 import com.android.aws.interfaces.AnalyticsListener;
 import com.android.aws.interfaces.BitmapRequestListener;
+import com.android.aws.interfaces.DetailedAnalyticsListener;
 import com.android.aws.interfaces.DownloadListener;
 import com.android.aws.interfaces.DownloadProgressListener;
+import com.android.aws.interfaces.InputStreamSupplier;
 import com.android.aws.interfaces.JSONArrayRequestListener;
 import com.android.aws.interfaces.JSONObjectRequestListener;
 import com.android.aws.interfaces.OkHttpResponseAndBitmapRequestListener;
@@ -39,7 +44,12 @@ import com.android.aws.interfaces.ParsedRequestListener;
 import com.android.aws.interfaces.StringRequestListener;
 import com.android.aws.interfaces.UploadProgressListener;
 import com.android.aws.internal.AWSRequestQueue;
+import com.android.aws.internal.BitmapDecoder;
+import com.android.aws.internal.StreamRequestBody;
 import com.android.aws.internal.SynchronousCall;
+import com.android.aws.metrics.AWSMetrics;
+import com.android.aws.model.RequestTiming;
+import com.android.aws.prefetch.PrefetchScheduler;
 import com.android.aws.utils.ParseUtil;
 import com.android.aws.utils.Utils;
 import com.google.gson.internal.$Gson$Types;
@@ -49,6 +59,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -90,18 +102,19 @@ public class AWSRequest<T extends AWSRequest> {
     private HashMap<String, List<String>> mQueryParameterMap = new HashMap<>();
     private HashMap<String, String> mPathParameterMap = new HashMap<>();
     private HashMap<String, File> mMultiPartFileMap = new HashMap<>();
+    private HashMap<String, StreamRequestBody> mMultiPartStreamMap = new HashMap<>();
     private String mDirPath;
     private String mFileName;
     private String mApplicationJsonString = null;
     private String mStringBody = null;
     private byte[] mByte = null;
     private File mFile = null;
+    private StreamRequestBody mStreamBody = null;
     private static final MediaType JSON_MEDIA_TYPE =
             MediaType.parse("application/json; charset=utf-8");
     private static final MediaType MEDIA_TYPE_MARKDOWN =
             MediaType.parse("text/x-markdown; charset=utf-8");
     private MediaType customMediaType = null;
-    private static final Object sDecodeLock = new Object();
 
     private Future future;
     private Call call;
@@ -125,6 +138,14 @@ public class AWSRequest<T extends AWSRequest> {
     private UploadProgressListener mUploadProgressListener;
     private DownloadListener mDownloadListener;
     private AnalyticsListener mAnalyticsListener;
+    private DetailedAnalyticsListener mDetailedAnalyticsListener;
+    private Executor mDetailedAnalyticsExecutor;
+    private final RequestTiming mTiming = new RequestTiming();
+    private boolean isTimingReported;
+    private boolean isFailed;
+    private boolean isStaleWhileRevalidate;
+    private OfflinePolicy mOfflinePolicy;
+    private boolean isStale;
 
     private Bitmap.Config mDecodeConfig;
     private int mMaxWidth;
@@ -135,6 +156,8 @@ public class AWSRequest<T extends AWSRequest> {
     private OkHttpClient mOkHttpClient = null;
     private String mUserAgent = null;
     private Type mType = null;
+    private long mRawBytesSent = -1;
+    private long mCompressedBytesSent = -1;
 
     public AWSRequest(GetRequestBuilder builder) {
         this.mRequestType = RequestType.SIMPLE;
@@ -153,6 +176,8 @@ public class AWSRequest<T extends AWSRequest> {
         this.mExecutor = builder.mExecutor;
         this.mOkHttpClient = builder.mOkHttpClient;
         this.mUserAgent = builder.mUserAgent;
+        this.isStaleWhileRevalidate = builder.isStaleWhileRevalidate;
+        this.mOfflinePolicy = builder.mOfflinePolicy;
     }
 
     public AWSRequest(PostRequestBuilder builder) {
@@ -169,6 +194,7 @@ public class AWSRequest<T extends AWSRequest> {
         this.mApplicationJsonString = builder.mApplicationJsonString;
         this.mStringBody = builder.mStringBody;
         this.mFile = builder.mFile;
+        this.mStreamBody = builder.mStreamBody;
         this.mByte = builder.mByte;
         this.mCacheControl = builder.mCacheControl;
         this.mExecutor = builder.mExecutor;
@@ -208,6 +234,7 @@ public class AWSRequest<T extends AWSRequest> {
         this.mPathParameterMap = builder.mPathParameterMap;
         this.mMultiPartParameterMap = builder.mMultiPartParameterMap;
         this.mMultiPartFileMap = builder.mMultiPartFileMap;
+        this.mMultiPartStreamMap = builder.mMultiPartStreamMap;
         this.mCacheControl = builder.mCacheControl;
         this.mPercentageThresholdForCancelling = builder.mPercentageThresholdForCancelling;
         this.mExecutor = builder.mExecutor;
@@ -324,6 +351,16 @@ public class AWSRequest<T extends AWSRequest> {
         AWSRequestQueue.getInstance().addRequest(this);
     }
 
+    /**
+     * Hands the prefetch to {@link PrefetchScheduler}, which runs it at low priority once its
+     * constraints allow.
+     */
+    public void schedulePrefetch() {
+        this.mResponseType = ResponseType.PREFETCH;
+        this.mPriority = Priority.LOW;
+        PrefetchScheduler.getInstance().schedule(this);
+    }
+
     public AWSResponse executeForJSONObject() {
         this.mResponseType = ResponseType.JSON_OBJECT;
         return SynchronousCall.execute(this);
@@ -390,6 +427,73 @@ public class AWSRequest<T extends AWSRequest> {
         return mAnalyticsListener;
     }
 
+    public T setDetailedAnalyticsListener(DetailedAnalyticsListener detailedAnalyticsListener) {
+        return setDetailedAnalyticsListener(detailedAnalyticsListener, null);
+    }
+
+    public T setDetailedAnalyticsListener(DetailedAnalyticsListener detailedAnalyticsListener,
+                                          Executor executor) {
+        this.mDetailedAnalyticsListener = detailedAnalyticsListener;
+        this.mDetailedAnalyticsExecutor = executor;
+        return (T) this;
+    }
+
+    public DetailedAnalyticsListener getDetailedAnalyticsListener() {
+        return mDetailedAnalyticsListener;
+    }
+
+    public RequestTiming getTiming() {
+        return mTiming;
+    }
+
+    public void setFailed(boolean isFailed) {
+        this.isFailed = isFailed;
+    }
+
+    public void sendDetailedAnalytics() {
+        final DetailedAnalyticsListener listener;
+        synchronized (mTiming) {
+            if (isTimingReported) {
+                return;
+            }
+            isTimingReported = true;
+            listener = mDetailedAnalyticsListener;
+        }
+        AWSMetrics.getInstance().record(this, mTiming, isFailed);
+        PrefetchScheduler.onRequestFinished(this, mTiming, isFailed);
+        if (listener == null) {
+            return;
+        }
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                listener.onReceived(AWSRequest.this, mTiming);
+            }
+        };
+        if (mDetailedAnalyticsExecutor != null) {
+            mDetailedAnalyticsExecutor.execute(runnable);
+        } else {
+            Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(runnable);
+        }
+    }
+
+    public void setCompressionStats(long rawBytesSent, long compressedBytesSent) {
+        this.mRawBytesSent = rawBytesSent;
+        this.mCompressedBytesSent = compressedBytesSent;
+    }
+
+    public long getRawBytesSent() {
+        return mRawBytesSent;
+    }
+
+    public long getCompressedBytesSent() {
+        return mCompressedBytesSent;
+    }
+
+    public boolean hasUploadProgressListener() {
+        return mUploadProgressListener != null;
+    }
+
     public int getMethod() {
         return mMethod;
     }
@@ -398,6 +502,18 @@ public class AWSRequest<T extends AWSRequest> {
         return mPriority;
     }
 
+    /**
+     * Changes the priority of the request, moving it within the network queue if it has not
+     * started yet.
+     */
+    public void setPriority(Priority priority) {
+        if (priority == null || priority == mPriority) {
+            return;
+        }
+        mPriority = priority;
+        AWSRequestQueue.getInstance().updatePriority(this);
+    }
+
     public String getUrl() {
         String tempUrl = mUrl;
         for (HashMap.Entry<String, String> entry : mPathParameterMap.entrySet()) {
@@ -435,6 +551,41 @@ public class AWSRequest<T extends AWSRequest> {
         this.mResponseType = responseType;
     }
 
+    public Type getType() {
+        return mType;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return isStaleWhileRevalidate && mMethod == Method.GET
+                && mRequestType == RequestType.SIMPLE
+                && mResponseType != ResponseType.OK_HTTP_RESPONSE
+                && mResponseType != ResponseType.PREFETCH;
+    }
+
+    public OfflinePolicy getOfflinePolicy() {
+        return mOfflinePolicy;
+    }
+
+    /**
+     * Returns true if the response was served from the cache by an {@link OfflinePolicy}
+     * because the network could not be reached.
+     */
+    public boolean isStale() {
+        return isStale;
+    }
+
+    public void setStale(boolean stale) {
+        isStale = stale;
+    }
+
+    public boolean needsOkHttpResponse() {
+        return mOkHttpResponseAndJSONObjectRequestListener != null
+                || mOkHttpResponseAndJSONArrayRequestListener != null
+                || mOkHttpResponseAndStringRequestListener != null
+                || mOkHttpResponseAndBitmapRequestListener != null
+                || mOkHttpResponseAndParsedRequestListener != null;
+    }
+
     public ResponseType getResponseAs() {
         return mResponseType;
     }
@@ -459,10 +610,6 @@ public class AWSRequest<T extends AWSRequest> {
         return mUserAgent;
     }
 
-    public Type getType() {
-        return mType;
-    }
-
     public void setType(Type type) {
         this.mType = type;
     }
@@ -482,10 +629,12 @@ public class AWSRequest<T extends AWSRequest> {
         isDelivered = true;
         if (mDownloadListener != null) {
             if (!isCancelled) {
+                mTiming.markDeliveryPosted();
                 if (mExecutor != null) {
                     mExecutor.execute(new Runnable() {
                         @Override
                         public void run() {
+                            mTiming.markDelivered();
                             if (mDownloadListener != null) {
                                 mDownloadListener.onDownloadComplete();
                             }
@@ -496,6 +645,7 @@ public class AWSRequest<T extends AWSRequest> {
                     Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
                         @Override
                         public void run() {
+                            mTiming.markDelivered();
                             if (mDownloadListener != null) {
                                 mDownloadListener.onDownloadComplete();
                             }
@@ -516,7 +666,9 @@ public class AWSRequest<T extends AWSRequest> {
         return new UploadProgressListener() {
             @Override
             public void onProgress(final long bytesUploaded, final long totalBytes) {
-                mProgress = (int) ((bytesUploaded * 100) / totalBytes);
+                if (totalBytes > 0) {
+                    mProgress = (int) ((bytesUploaded * 100) / totalBytes);
+                }
                 if (mUploadProgressListener != null && !isCancelled) {
                     mUploadProgressListener.onProgress(bytesUploaded, totalBytes);
                 }
@@ -599,14 +751,61 @@ public class AWSRequest<T extends AWSRequest> {
         mUploadProgressListener = null;
         mDownloadListener = null;
         mAnalyticsListener = null;
+        mDetailedAnalyticsListener = null;
     }
 
     public void finish() {
+        sendDetailedAnalytics();
         destroy();
         AWSRequestQueue.getInstance().finish(this);
     }
 
     public AWSResponse parseResponse(Response response) {
+        final long startTime = System.nanoTime();
+        try {
+            return parse(response);
+        } finally {
+            mTiming.addParseTime(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Reserves the memory the decode of this bitmap response needs, blocking while the decode
+     * budget is used up.
+     *
+     * @return The number of bytes reserved, to be given back through
+     * {@link BitmapDecoder#release(long)} once the decode is over or will not happen
+     */
+    public long admitBitmapDecode(Response response) throws IOException {
+        mTiming.markDecodeWaiting();
+        return BitmapDecoder.admit(response, mMaxWidth, mMaxHeight, mDecodeConfig, mScaleType);
+    }
+
+    /**
+     * Decodes a bitmap response whose memory was reserved through
+     * {@link #admitBitmapDecode(Response)}.
+     */
+    public AWSResponse decodeAdmittedBitmap(Response response) {
+        final long startTime = System.nanoTime();
+        try {
+            return decodeBitmap(response);
+        } finally {
+            mTiming.addParseTime(System.nanoTime() - startTime);
+        }
+    }
+
+    private AWSResponse decodeBitmap(Response response) {
+        mTiming.markDecodeStarted();
+        try {
+            return Utils.decodeBitmap(response, mMaxWidth, mMaxHeight, mDecodeConfig, mScaleType);
+        } catch (Exception e) {
+            return AWSResponse.failed(Utils.getErrorForParse(new AWSError(e)));
+        } finally {
+            mTiming.markDecodeEnd();
+        }
+    }
+
+    private AWSResponse parse(Response response) {
         switch (mResponseType) {
             case JSON_ARRAY:
                 try {
@@ -631,13 +830,16 @@ public class AWSRequest<T extends AWSRequest> {
                     return AWSResponse.failed(Utils.getErrorForParse(new AWSError(e)));
                 }
             case BITMAP:
-                synchronized (sDecodeLock) {
-                    try {
-                        return Utils.decodeBitmap(response, mMaxWidth, mMaxHeight,
-                                mDecodeConfig, mScaleType);
-                    } catch (Exception e) {
-                        return AWSResponse.failed(Utils.getErrorForParse(new AWSError(e)));
-                    }
+                long decodeBytes = 0;
+                try {
+                    decodeBytes = admitBitmapDecode(response);
+                } catch (Exception e) {
+                    return AWSResponse.failed(Utils.getErrorForParse(new AWSError(e)));
+                }
+                try {
+                    return decodeBitmap(response);
+                } finally {
+                    BitmapDecoder.release(decodeBytes);
                 }
             case PARSED:
                 try {
@@ -689,16 +891,19 @@ public class AWSRequest<T extends AWSRequest> {
         try {
             isDelivered = true;
             if (!isCancelled) {
+                mTiming.markDeliveryPosted();
                 if (mExecutor != null) {
                     mExecutor.execute(new Runnable() {
                         @Override
                         public void run() {
+                            mTiming.markDelivered();
                             deliverSuccessResponse(response);
                         }
                     });
                 } else {
                     Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
                         public void run() {
+                            mTiming.markDelivered();
                             deliverSuccessResponse(response);
                         }
                     });
@@ -715,7 +920,54 @@ public class AWSRequest<T extends AWSRequest> {
         }
     }
 
+    /**
+     * Delivers a cached response without finishing the request, so that a later revalidation
+     * can still deliver a newer response or finish it through {@link #finishAfterDelivery()}.
+     */
+    public void deliverStaleResponse(final AWSResponse response) {
+        try {
+            isDelivered = true;
+            if (isCancelled) {
+                return;
+            }
+            Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled) {
+                        notifySuccessListener(response);
+                    }
+                }
+            };
+            if (mExecutor != null) {
+                mExecutor.execute(runnable);
+            } else {
+                Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(runnable);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void finishAfterDelivery() {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        };
+        if (mExecutor != null) {
+            mExecutor.execute(runnable);
+        } else {
+            Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(runnable);
+        }
+    }
+
     private void deliverSuccessResponse(AWSResponse response) {
+        notifySuccessListener(response);
+        finish();
+    }
+
+    private void notifySuccessListener(AWSResponse response) {
         if (mJSONObjectRequestListener != null) {
             mJSONObjectRequestListener.onResponse((JSONObject) response.getResult());
         } else if (mJSONArrayRequestListener != null) {
@@ -737,10 +989,10 @@ public class AWSRequest<T extends AWSRequest> {
         } else if (mOkHttpResponseAndParsedRequestListener != null) {
             mOkHttpResponseAndParsedRequestListener.onResponse(response.getOkHttpResponse(), response.getResult());
         }
-        finish();
     }
 
     private void deliverErrorResponse(AWSError awsError) {
+        isFailed = true;
         if (mJSONObjectRequestListener != null) {
             mJSONObjectRequestListener.onError(awsError);
         } else if (mJSONArrayRequestListener != null) {
@@ -772,10 +1024,12 @@ public class AWSRequest<T extends AWSRequest> {
         try {
             isDelivered = true;
             if (!isCancelled) {
+                mTiming.markDeliveryPosted();
                 if (mExecutor != null) {
                     mExecutor.execute(new Runnable() {
                         @Override
                         public void run() {
+                            mTiming.markDelivered();
                             if (mOkHttpResponseListener != null) {
                                 mOkHttpResponseListener.onResponse(response);
                             }
@@ -785,6 +1039,7 @@ public class AWSRequest<T extends AWSRequest> {
                 } else {
                     Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
                         public void run() {
+                            mTiming.markDelivered();
                             if (mOkHttpResponseListener != null) {
                                 mOkHttpResponseListener.onResponse(response);
                             }
@@ -822,6 +1077,11 @@ public class AWSRequest<T extends AWSRequest> {
                 return RequestBody.create(customMediaType, mFile);
             }
             return RequestBody.create(MEDIA_TYPE_MARKDOWN, mFile);
+        } else if (mStreamBody != null) {
+            if (customMediaType != null) {
+                return mStreamBody.withContentType(customMediaType);
+            }
+            return mStreamBody;
         } else if (mByte != null) {
             if (customMediaType != null) {
                 return RequestBody.create(customMediaType, mByte);
@@ -861,6 +1121,17 @@ public class AWSRequest<T extends AWSRequest> {
                         "form-data; name=\"" + entry.getKey() + "\"; filename=\"" + fileName + "\""),
                         fileBody);
             }
+            for (HashMap.Entry<String, StreamRequestBody> entry : mMultiPartStreamMap.entrySet()) {
+                String fileName = entry.getValue().getFileName();
+                StreamRequestBody streamBody = entry.getValue();
+                if (streamBody.contentType() == null && fileName != null) {
+                    streamBody = streamBody.withContentType(MediaType.parse(Utils.getMimeType(fileName)));
+                }
+                builder.addPart(Headers.of("Content-Disposition",
+                        "form-data; name=\"" + entry.getKey() + "\"; filename=\""
+                                + (fileName != null ? fileName : entry.getKey()) + "\""),
+                        streamBody);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -919,6 +1190,8 @@ public class AWSRequest<T extends AWSRequest> {
         private Executor mExecutor;
         private OkHttpClient mOkHttpClient;
         private String mUserAgent;
+        private boolean isStaleWhileRevalidate;
+        private OfflinePolicy mOfflinePolicy;
 
         public GetRequestBuilder(String url) {
             this.mUrl = url;
@@ -1062,6 +1335,20 @@ public class AWSRequest<T extends AWSRequest> {
             return (T) this;
         }
 
+        /**
+         * Delivers a cached response right away, even if stale, then revalidates it in the
+         * background and calls the listener a second time only if the content has changed.
+         */
+        public T setStaleWhileRevalidate() {
+            isStaleWhileRevalidate = true;
+            return (T) this;
+        }
+
+        public T setOfflinePolicy(OfflinePolicy offlinePolicy) {
+            mOfflinePolicy = offlinePolicy;
+            return (T) this;
+        }
+
         @Override
         public T setExecutor(Executor executor) {
             mExecutor = executor;
@@ -1148,6 +1435,7 @@ public class AWSRequest<T extends AWSRequest> {
         private String mStringBody = null;
         private byte[] mByte = null;
         private File mFile = null;
+        private StreamRequestBody mStreamBody = null;
         private HashMap<String, List<String>> mHeadersMap = new HashMap<>();
         private HashMap<String, String> mBodyParameterMap = new HashMap<>();
         private HashMap<String, String> mUrlEncodedFormBodyParameterMap = new HashMap<>();
@@ -1394,6 +1682,34 @@ public class AWSRequest<T extends AWSRequest> {
             return (T) this;
         }
 
+        public T addStreamBody(InputStreamSupplier inputStreamSupplier, long contentLength) {
+            mStreamBody = new StreamRequestBody(MEDIA_TYPE_MARKDOWN, inputStreamSupplier,
+                    contentLength, null);
+            return (T) this;
+        }
+
+        /**
+         * The stream can only be sent once, so a retry or a redirect fails. Use
+         * {@link #addStreamBody(InputStreamSupplier, long)}, {@link #addUriBody} or
+         * {@link #addFileDescriptorBody} for a body that can be replayed.
+         */
+        public T addStreamBody(InputStream inputStream, long contentLength) {
+            mStreamBody = StreamRequestBody.fromInputStream(MEDIA_TYPE_MARKDOWN, inputStream,
+                    contentLength, null);
+            return (T) this;
+        }
+
+        public T addFileDescriptorBody(ParcelFileDescriptor fileDescriptor) {
+            mStreamBody = StreamRequestBody.fromFileDescriptor(MEDIA_TYPE_MARKDOWN,
+                    fileDescriptor, null);
+            return (T) this;
+        }
+
+        public T addUriBody(Context context, Uri uri) {
+            mStreamBody = StreamRequestBody.fromUri(context, uri, MEDIA_TYPE_MARKDOWN);
+            return (T) this;
+        }
+
         public T addByteBody(byte[] bytes) {
             mByte = bytes;
             return (T) this;
@@ -1601,6 +1917,7 @@ public class AWSRequest<T extends AWSRequest> {
         private HashMap<String, List<String>> mQueryParameterMap = new HashMap<>();
         private HashMap<String, String> mPathParameterMap = new HashMap<>();
         private HashMap<String, File> mMultiPartFileMap = new HashMap<>();
+        private HashMap<String, StreamRequestBody> mMultiPartStreamMap = new HashMap<>();
         private CacheControl mCacheControl;
         private int mPercentageThresholdForCancelling = 0;
         private Executor mExecutor;
@@ -1795,6 +2112,39 @@ public class AWSRequest<T extends AWSRequest> {
             return (T) this;
         }
 
+        public T addMultipartStream(String key, String fileName, String contentType,
+                                    InputStreamSupplier inputStreamSupplier, long contentLength) {
+            mMultiPartStreamMap.put(key, new StreamRequestBody(
+                    contentType != null ? MediaType.parse(contentType) : null,
+                    inputStreamSupplier, contentLength, fileName));
+            return (T) this;
+        }
+
+        /**
+         * The stream can only be sent once, so a retry or a redirect fails. Use the
+         * {@link InputStreamSupplier} variant, {@link #addMultipartUri} or
+         * {@link #addMultipartFileDescriptor} for a part that can be replayed.
+         */
+        public T addMultipartStream(String key, String fileName, String contentType,
+                                    InputStream inputStream, long contentLength) {
+            mMultiPartStreamMap.put(key, StreamRequestBody.fromInputStream(
+                    contentType != null ? MediaType.parse(contentType) : null,
+                    inputStream, contentLength, fileName));
+            return (T) this;
+        }
+
+        public T addMultipartFileDescriptor(String key, String fileName,
+                                            ParcelFileDescriptor fileDescriptor) {
+            mMultiPartStreamMap.put(key, StreamRequestBody.fromFileDescriptor(null,
+                    fileDescriptor, fileName));
+            return (T) this;
+        }
+
+        public T addMultipartUri(String key, Context context, Uri uri) {
+            mMultiPartStreamMap.put(key, StreamRequestBody.fromUri(context, uri));
+            return (T) this;
+        }
+
         public T setPercentageThresholdForCancelling(int percentageThresholdForCancelling) {
             this.mPercentageThresholdForCancelling = percentageThresholdForCancelling;
             return (T) this;
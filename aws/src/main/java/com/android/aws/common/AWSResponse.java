@@ -29,6 +29,8 @@ public class AWSResponse<T> {
 
     private Response response;
 
+    private boolean isStale;
+
     public static <T> AWSResponse<T> success(T result) {
         return new AWSResponse<>(result);
     }
@@ -67,4 +69,12 @@ public class AWSResponse<T> {
         return response;
     }
 
+    public boolean isStale() {
+        return isStale;
+    }
+
+    public void setStale(boolean stale) {
+        isStale = stale;
+    }
+
 }
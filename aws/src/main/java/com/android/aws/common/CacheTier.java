@@ -0,0 +1,40 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.common;
+
+/**
+ * Where the response of a request came from.
+ */
+public enum CacheTier {
+
+    /**
+     * Fetched from the network, including conditional requests revalidated by the server.
+     */
+    NETWORK,
+
+    /**
+     * Read from the OkHttp disk cache and parsed again.
+     */
+    DISK,
+
+    /**
+     * Served from the in-memory cache of already parsed responses.
+     */
+    MEMORY
+
+}
@@ -34,6 +34,7 @@ public class ConnectionClassManager {
     private ConnectionQuality mCurrentConnectionQuality = ConnectionQuality.UNKNOWN;
     private int mCurrentBandwidthForSampling = 0;
     private int mCurrentNumberOfSample = 0;
+    private double mCurrentSampleWeight = 0;
     private int mCurrentBandwidth = 0;
     private ConnectionQualityChangeListener mConnectionQualityChangeListener;
 
@@ -49,13 +50,23 @@ public class ConnectionClassManager {
     }
 
     public synchronized void updateBandwidth(long bytes, long timeInMs) {
+        updateBandwidth(bytes, timeInMs, 1);
+    }
+
+    /**
+     * A transfer that shared the link with others only saw part of the bandwidth, so its
+     * sample is weighted down by the number of transfers that were running alongside it.
+     */
+    public synchronized void updateBandwidth(long bytes, long timeInMs, int concurrentTransfers) {
         if (timeInMs == 0 || bytes < 20000 || (bytes) * 1.0 / (timeInMs) *
                 BYTES_TO_BITS < BANDWIDTH_LOWER_BOUND) {
             return;
         }
         double bandwidth = (bytes) * 1.0 / (timeInMs) * BYTES_TO_BITS;
+        double weight = 1.0 / Math.max(1, concurrentTransfers);
         mCurrentBandwidthForSampling = (int) ((mCurrentBandwidthForSampling *
-                mCurrentNumberOfSample + bandwidth) / (mCurrentNumberOfSample + 1));
+                mCurrentSampleWeight + bandwidth * weight) / (mCurrentSampleWeight + weight));
+        mCurrentSampleWeight += weight;
         mCurrentNumberOfSample++;
         if (mCurrentNumberOfSample == DEFAULT_SAMPLES_TO_QUALITY_CHANGE ||
                 (mCurrentConnectionQuality == ConnectionQuality.UNKNOWN &&
@@ -76,6 +87,7 @@ public class ConnectionClassManager {
             if (mCurrentNumberOfSample == DEFAULT_SAMPLES_TO_QUALITY_CHANGE) {
                 mCurrentBandwidthForSampling = 0;
                 mCurrentNumberOfSample = 0;
+                mCurrentSampleWeight = 0;
             }
             if (mCurrentConnectionQuality != lastConnectionQuality &&
                     mConnectionQualityChangeListener != null) {
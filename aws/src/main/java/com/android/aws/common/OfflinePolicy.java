@@ -0,0 +1,59 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.common;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+
+/**
+ * Lets a GET request fall back to the disk cache when the network cannot be reached. The cached
+ * response is used if it is no older than the given max-stale, and the request is then marked
+ * as stale. When the device is known to be offline the cache is read straight away instead of
+ * waiting for the connection to fail.
+ */
+public class OfflinePolicy {
+
+    private final int mMaxStaleSeconds;
+    private final CacheControl mCacheControl;
+
+    public OfflinePolicy() {
+        this(Integer.MAX_VALUE, TimeUnit.SECONDS);
+    }
+
+    public OfflinePolicy(int maxStale, TimeUnit timeUnit) {
+        if (maxStale < 0) {
+            throw new IllegalArgumentException("maxStale < 0: " + maxStale);
+        }
+        long maxStaleSeconds = timeUnit.toSeconds(maxStale);
+        mMaxStaleSeconds = maxStaleSeconds > Integer.MAX_VALUE
+                ? Integer.MAX_VALUE : (int) maxStaleSeconds;
+        mCacheControl = new CacheControl.Builder()
+                .onlyIfCached()
+                .maxStale(mMaxStaleSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public int getMaxStaleSeconds() {
+        return mMaxStaleSeconds;
+    }
+
+    public CacheControl getCacheControl() {
+        return mCacheControl;
+    }
+}
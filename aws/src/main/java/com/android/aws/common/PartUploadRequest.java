@@ -0,0 +1,241 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.common;
+
+import com.android.aws.interfaces.PartUploadListener;
+import com.android.aws.interfaces.UploadProgressListener;
+import com.android.aws.internal.PartUploader;
+import com.android.aws.utils.Utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+
+/**
+ * Uploads a file as a set of fixed-size parts using the S3 multipart protocol:
+ * initiate ({@code POST ?uploads}), upload each part ({@code PUT ?partNumber=&uploadId=})
+ * concurrently, then complete ({@code POST ?uploadId=}). Failed parts are retried on their
+ * own and the upload is aborted ({@code DELETE ?uploadId=}) if a part cannot be sent.
+ * Request signing, if needed, belongs in an interceptor on the supplied OkHttpClient.
+ */
+@SuppressWarnings("unused")
+public class PartUploadRequest {
+
+    public static final long DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private final String mUrl;
+    private final File mFile;
+    private final long mPartSize;
+    private final int mConcurrency;
+    private final int mMaxRetries;
+    private final Object mTag;
+    private final HashMap<String, List<String>> mHeadersMap;
+    private final MediaType mContentType;
+    private final Executor mExecutor;
+    private final OkHttpClient mOkHttpClient;
+    private UploadProgressListener mUploadProgressListener;
+    private PartUploader mUploader;
+
+    private PartUploadRequest(Builder builder) {
+        mUrl = builder.mUrl;
+        mFile = builder.mFile;
+        mPartSize = builder.mPartSize;
+        mConcurrency = builder.mConcurrency;
+        mMaxRetries = builder.mMaxRetries;
+        mTag = builder.mTag;
+        mHeadersMap = builder.mHeadersMap;
+        mContentType = MediaType.parse(builder.mContentType != null ?
+                builder.mContentType : Utils.getMimeType(builder.mFile.getName()));
+        mExecutor = builder.mExecutor;
+        mOkHttpClient = builder.mOkHttpClient;
+    }
+
+    public PartUploadRequest setUploadProgressListener(UploadProgressListener uploadProgressListener) {
+        mUploadProgressListener = uploadProgressListener;
+        return this;
+    }
+
+    public synchronized void startUpload(PartUploadListener partUploadListener) {
+        if (mUploader != null) {
+            throw new IllegalStateException("Upload already started");
+        }
+        mUploader = new PartUploader(this, partUploadListener);
+        mUploader.start();
+    }
+
+    public synchronized void cancel() {
+        if (mUploader != null) {
+            mUploader.cancel();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return mUploader != null && mUploader.isCanceled();
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getPartSize() {
+        return mPartSize;
+    }
+
+    public int getPartCount() {
+        return (int) Math.max(1, (mFile.length() + mPartSize - 1) / mPartSize);
+    }
+
+    public int getConcurrency() {
+        return mConcurrency;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    public Object getTag() {
+        return mTag;
+    }
+
+    public MediaType getContentType() {
+        return mContentType;
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    public OkHttpClient getOkHttpClient() {
+        return mOkHttpClient;
+    }
+
+    public UploadProgressListener getUploadProgressListener() {
+        return mUploadProgressListener;
+    }
+
+    public Headers getHeaders() {
+        Headers.Builder builder = new Headers.Builder();
+        for (Map.Entry<String, List<String>> entry : mHeadersMap.entrySet()) {
+            for (String value : entry.getValue()) {
+                builder.add(entry.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    public static class Builder {
+
+        private final String mUrl;
+        private final File mFile;
+        private long mPartSize = DEFAULT_PART_SIZE;
+        private int mConcurrency = DEFAULT_CONCURRENCY;
+        private int mMaxRetries = DEFAULT_MAX_RETRIES;
+        private Object mTag;
+        private HashMap<String, List<String>> mHeadersMap = new HashMap<>();
+        private String mContentType;
+        private Executor mExecutor;
+        private OkHttpClient mOkHttpClient;
+
+        public Builder(String url, File file) {
+            mUrl = url;
+            mFile = file;
+        }
+
+        public Builder setPartSize(long partSize) {
+            if (partSize <= 0) {
+                throw new IllegalArgumentException("partSize <= 0");
+            }
+            mPartSize = partSize;
+            return this;
+        }
+
+        public Builder setConcurrency(int concurrency) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("concurrency <= 0");
+            }
+            mConcurrency = concurrency;
+            return this;
+        }
+
+        public Builder setMaxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries < 0");
+            }
+            mMaxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder setTag(Object tag) {
+            mTag = tag;
+            return this;
+        }
+
+        public Builder addHeaders(String key, String value) {
+            List<String> list = mHeadersMap.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                mHeadersMap.put(key, list);
+            }
+            if (!list.contains(value)) {
+                list.add(value);
+            }
+            return this;
+        }
+
+        public Builder addHeaders(Map<String, String> headerMap) {
+            if (headerMap != null) {
+                for (HashMap.Entry<String, String> entry : headerMap.entrySet()) {
+                    addHeaders(entry.getKey(), entry.getValue());
+                }
+            }
+            return this;
+        }
+
+        public Builder setContentType(String contentType) {
+            mContentType = contentType;
+            return this;
+        }
+
+        public Builder setExecutor(Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        public Builder setOkHttpClient(OkHttpClient okHttpClient) {
+            mOkHttpClient = okHttpClient;
+            return this;
+        }
+
+        public PartUploadRequest build() {
+            return new PartUploadRequest(this);
+        }
+    }
+}
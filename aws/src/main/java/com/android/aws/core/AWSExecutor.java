@@ -83,6 +83,25 @@ public class AWSExecutor extends ThreadPoolExecutor {
         setMaximumPoolSize(threadCount);
     }
 
+    /**
+     * Moves a queued task to its new priority. Tasks that already started keep running as they
+     * are.
+     *
+     * @return true if the task was still queued
+     */
+    public boolean updatePriority(Future<?> future, Priority priority) {
+        if (!(future instanceof AWSFutureTask)) {
+            return false;
+        }
+        AWSFutureTask futureTask = (AWSFutureTask) future;
+        if (!getQueue().remove(futureTask)) {
+            return false;
+        }
+        futureTask.hunter.setPriority(priority);
+        execute(futureTask);
+        return true;
+    }
+
     @Override
     public Future<?> submit(Runnable task) {
         AWSFutureTask futureTask = new AWSFutureTask((InternalRunnable) task);
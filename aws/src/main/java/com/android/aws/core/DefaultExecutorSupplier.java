@@ -20,19 +20,35 @@ package com.android.aws.core;
 import android.os.Process;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultExecutorSupplier implements ExecutorSupplier {
 
     public static final int DEFAULT_MAX_NUM_THREADS = 2 * Runtime.getRuntime().availableProcessors() + 1;
+    public static final int DEFAULT_NUM_DECODE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
     private final AWSExecutor mNetworkExecutor;
     private final AWSExecutor mImmediateNetworkExecutor;
+    private final ThreadPoolExecutor mUploadPartExecutor;
+    private final ThreadPoolExecutor mLightWeightExecutor;
+    private final ThreadPoolExecutor mDecodeExecutor;
     private final Executor mMainThreadExecutor;
 
     public DefaultExecutorSupplier() {
         ThreadFactory backgroundPriorityThreadFactory = new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND);
         mNetworkExecutor = new AWSExecutor(DEFAULT_MAX_NUM_THREADS, backgroundPriorityThreadFactory);
         mImmediateNetworkExecutor = new AWSExecutor(2, backgroundPriorityThreadFactory);
+        mUploadPartExecutor = new ThreadPoolExecutor(DEFAULT_MAX_NUM_THREADS, DEFAULT_MAX_NUM_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), backgroundPriorityThreadFactory);
+        mUploadPartExecutor.allowCoreThreadTimeOut(true);
+        mLightWeightExecutor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), backgroundPriorityThreadFactory);
+        mLightWeightExecutor.allowCoreThreadTimeOut(true);
+        mDecodeExecutor = new ThreadPoolExecutor(DEFAULT_NUM_DECODE_THREADS, DEFAULT_NUM_DECODE_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), backgroundPriorityThreadFactory);
+        mDecodeExecutor.allowCoreThreadTimeOut(true);
         mMainThreadExecutor = new MainThreadExecutor();
     }
 
@@ -46,6 +62,21 @@ public class DefaultExecutorSupplier implements ExecutorSupplier {
         return mImmediateNetworkExecutor;
     }
 
+    @Override
+    public Executor forUploadPartTasks() {
+        return mUploadPartExecutor;
+    }
+
+    @Override
+    public Executor forLightWeightBackgroundTasks() {
+        return mLightWeightExecutor;
+    }
+
+    @Override
+    public Executor forDecodeTasks() {
+        return mDecodeExecutor;
+    }
+
     @Override
     public Executor forMainThreadTasks() {
         return mMainThreadExecutor;
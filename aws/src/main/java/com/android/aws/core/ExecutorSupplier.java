@@ -25,5 +25,11 @@ public interface ExecutorSupplier {
 
     AWSExecutor forImmediateNetworkTasks();
 
+    Executor forUploadPartTasks();
+
+    Executor forLightWeightBackgroundTasks();
+
+    Executor forDecodeTasks();
+
     Executor forMainThreadTasks();
 }
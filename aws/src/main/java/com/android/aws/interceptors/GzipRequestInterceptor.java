@@ -17,7 +17,16 @@
 
 package com.android.aws.interceptors;
 
+import com.android.aws.common.AWSRequest;
+import com.android.aws.common.ConnectionClassManager;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -26,24 +35,101 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okio.Buffer;
 import okio.BufferedSink;
-import okio.GzipSink;
+import okio.ForwardingSink;
 import okio.Okio;
+import okio.Sink;
 
+/**
+ * Gzips request bodies on the fly. Bodies smaller than the threshold or with an already
+ * compressed content type are sent as they are. The compressed body is streamed with chunked
+ * transfer encoding when the server accepts it, otherwise it is buffered to learn its length.
+ */
 public class GzipRequestInterceptor implements Interceptor {
+
+    public static final long DEFAULT_MIN_COMPRESS_SIZE = 1024;
+
+    private static final Set<String> INCOMPRESSIBLE_TYPES = new HashSet<>();
+    private static final Set<String> INCOMPRESSIBLE_SUBTYPES = new HashSet<>();
+
+    static {
+        INCOMPRESSIBLE_TYPES.add("image");
+        INCOMPRESSIBLE_TYPES.add("video");
+        INCOMPRESSIBLE_TYPES.add("audio");
+        INCOMPRESSIBLE_SUBTYPES.add("zip");
+        INCOMPRESSIBLE_SUBTYPES.add("gzip");
+        INCOMPRESSIBLE_SUBTYPES.add("x-gzip");
+        INCOMPRESSIBLE_SUBTYPES.add("x-7z-compressed");
+        INCOMPRESSIBLE_SUBTYPES.add("x-rar-compressed");
+    }
+
+    private final long mMinCompressSize;
+    private final boolean isChunkedTransferAllowed;
+    private final Set<String> mIncompressibleContentTypes =
+            Collections.synchronizedSet(new HashSet<String>());
+
+    public GzipRequestInterceptor() {
+        this(DEFAULT_MIN_COMPRESS_SIZE, false);
+    }
+
+    public GzipRequestInterceptor(long minCompressSize, boolean chunkedTransferAllowed) {
+        mMinCompressSize = minCompressSize;
+        isChunkedTransferAllowed = chunkedTransferAllowed;
+    }
+
+    public GzipRequestInterceptor addIncompressibleContentType(String contentType) {
+        mIncompressibleContentTypes.add(contentType.toLowerCase());
+        return this;
+    }
+
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
-        if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null) {
+        RequestBody body = originalRequest.body();
+        if (body == null || originalRequest.header("Content-Encoding") != null
+                || !shouldCompress(body)) {
             return chain.proceed(originalRequest);
         }
 
+        CompressionStats stats = new CompressionStats(originalRequest.tag());
+        RequestBody gzipBody = gzip(body, compressionLevel(), stats);
         Request compressedRequest = originalRequest.newBuilder()
                 .header("Content-Encoding", "gzip")
-                .method(originalRequest.method(), forceContentLength(gzip(originalRequest.body())))
+                .method(originalRequest.method(),
+                        isChunkedTransferAllowed ? gzipBody : forceContentLength(gzipBody))
                 .build();
         return chain.proceed(compressedRequest);
     }
 
+    private boolean shouldCompress(RequestBody body) throws IOException {
+        long contentLength = body.contentLength();
+        if (contentLength != -1 && contentLength < mMinCompressSize) {
+            return false;
+        }
+        MediaType contentType = body.contentType();
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.type().toLowerCase();
+        String subtype = contentType.subtype().toLowerCase();
+        return !INCOMPRESSIBLE_TYPES.contains(type)
+                && !INCOMPRESSIBLE_SUBTYPES.contains(subtype)
+                && !mIncompressibleContentTypes.contains(type + "/" + subtype);
+    }
+
+    // Spend CPU on compression only where the link is slow enough for it to pay off.
+    private static int compressionLevel() {
+        switch (ConnectionClassManager.getInstance().getCurrentConnectionQuality()) {
+            case POOR:
+                return Deflater.BEST_COMPRESSION;
+            case GOOD:
+                return 3;
+            case EXCELLENT:
+                return Deflater.BEST_SPEED;
+            default:
+                return 6;
+        }
+    }
+
     private RequestBody forceContentLength(final RequestBody requestBody) throws IOException {
         final Buffer buffer = new Buffer();
         requestBody.writeTo(buffer);
@@ -65,7 +151,8 @@ public class GzipRequestInterceptor implements Interceptor {
         };
     }
 
-    private RequestBody gzip(final RequestBody body) {
+    private RequestBody gzip(final RequestBody body, final int level,
+                             final CompressionStats stats) {
         return new RequestBody() {
             @Override
             public MediaType contentType() {
@@ -79,10 +166,50 @@ public class GzipRequestInterceptor implements Interceptor {
 
             @Override
             public void writeTo(BufferedSink sink) throws IOException {
-                BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+                CountingSink compressedSink = new CountingSink(sink);
+                BufferedSink compressedBufferedSink = Okio.buffer(compressedSink);
+                CountingSink rawSink = new CountingSink(Okio.sink(
+                        new LevelGzipOutputStream(compressedBufferedSink.outputStream(), level)));
+                BufferedSink gzipSink = Okio.buffer(rawSink);
                 body.writeTo(gzipSink);
                 gzipSink.close();
+                stats.record(rawSink.bytesWritten, compressedSink.bytesWritten);
             }
         };
     }
-}
\ No newline at end of file
+
+    private static final class CompressionStats {
+        private final Object mTag;
+
+        CompressionStats(Object tag) {
+            mTag = tag;
+        }
+
+        void record(long rawBytes, long compressedBytes) {
+            if (mTag instanceof AWSRequest) {
+                ((AWSRequest) mTag).setCompressionStats(rawBytes, compressedBytes);
+            }
+        }
+    }
+
+    private static final class CountingSink extends ForwardingSink {
+        long bytesWritten;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+        }
+    }
+
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8 * 1024);
+            def.setLevel(level);
+        }
+    }
+}
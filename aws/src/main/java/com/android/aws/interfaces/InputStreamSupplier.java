@@ -0,0 +1,30 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface InputStreamSupplier {
+
+    /**
+     * Opens a fresh stream positioned at the start of the content. Called once per attempt,
+     * so a supplier that can reopen its source makes the body replayable on retry.
+     */
+    InputStream open() throws IOException;
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.interfaces;
+
+import android.graphics.Bitmap;
+
+/**
+ * Transforms a decoded bitmap on the decode executor before it is cached and delivered, so a
+ * cache hit returns the transformed pixels.
+ */
+public interface Transformation {
+
+    /**
+     * Returns the transformed bitmap. The source must not be recycled; if a new bitmap is
+     * returned, the loader hands the source back to the bitmap pool when it is unused.
+     */
+    Bitmap transform(Bitmap source);
+
+    /**
+     * Identifies the transformation and its parameters in the cache key.
+     */
+    String key();
+}
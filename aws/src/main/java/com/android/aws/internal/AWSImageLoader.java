@@ -18,20 +18,45 @@
 package com.android.aws.internal;
 
 import android.graphics.Bitmap;
+import android.annotation.TargetApi;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
 import android.widget.ImageView;
 
 import com.android.aws.AWS;
 import com.android.aws.cache.AWSBitmapCache;
+import com.android.aws.cache.AWSBitmapPool;
+import com.android.aws.cache.AWSCache;
+import com.android.aws.cache.AWSDiskBitmapCache;
+import com.android.aws.common.AWSConstants;
 import com.android.aws.common.AWSRequest;
+import com.android.aws.common.AWSResponse;
+import com.android.aws.common.Priority;
+import com.android.aws.core.Core;
 import com.android.aws.error.AWSError;
 import com.android.aws.interfaces.BitmapRequestListener;
+import com.android.aws.interfaces.Transformation;
+import com.android.aws.metrics.AWSMetrics;
+import com.android.aws.utils.Utils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
-
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads bitmaps through the memory cache, the optional disk cache and the network. It can be
+ * used from any thread: cache lookups and request bookkeeping happen on the calling thread,
+ * and only the {@link ImageListener} callbacks are delivered on the main thread.
+ */
 public class AWSImageLoader {
 
     // Get max available VM memory, exceeding this amount will throw an
@@ -42,23 +67,63 @@ public class AWSImageLoader {
     // Use 1/8th of the available memory for this memory cache.
     private static final int cacheSize = maxMemory / 8;
 
-    private int mBatchResponseDelayMs = 100;
+    private static final String IMAGE_REQUEST_TAG = "ImageRequestTag";
+
+    private static final int MAX_INDEXED_URLS = 1024;
+
+    private static final long FRAME_BIND_BUDGET_NANOS = 4 * 1000000L;
+
+    private static final int FALLBACK_FRAME_DELAY_MS = 16;
+
+    // Negative while delivery follows frame timing, see setBatchedResponseDelay.
+    private volatile int mBatchResponseDelayMs = -1;
 
     private final ImageCache mCache;
 
-    private final HashMap<String, BatchedImageRequest> mInFlightRequests =
-            new HashMap<String, BatchedImageRequest>();
+    private volatile AWSDiskBitmapCache mDiskCache;
 
-    private final HashMap<String, BatchedImageRequest> mBatchedResponses =
-            new HashMap<String, BatchedImageRequest>();
+    private final ConcurrentHashMap<String, BatchedImageRequest> mInFlightRequests =
+            new ConcurrentHashMap<String, BatchedImageRequest>();
+
+    // Guarded by itself, together with isDeliveryScheduled. Kept in completion order.
+    private final LinkedHashMap<String, BatchedImageRequest> mBatchedResponses =
+            new LinkedHashMap<String, BatchedImageRequest>();
+
+    // Cache keys of the sizes each recently loaded url was cached at, with their scale type.
+    private final AWSCache<String, Map<String, ImageView.ScaleType>> mVariants =
+            new AWSCache<String, Map<String, ImageView.ScaleType>>(MAX_INDEXED_URLS);
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
-    private Runnable mRunnable;
+    private boolean isDeliveryScheduled;
+
+    private final Runnable mDeliveryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliverBatchedResponses();
+        }
+    };
+
+    private final Runnable mFrameDelivery = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+            ? new FrameDelivery(mDeliveryRunnable) : null;
 
-    private BitmapFactory.Options mBitmapOptions = new BitmapFactory.Options();
+    private volatile BitmapFactory.Options mBitmapOptions = new BitmapFactory.Options();
 
-    private static AWSImageLoader sInstance;
+    // Guarded by itself, together with mDeferredRequests.
+    private final HashSet<Object> mPausedTags = new HashSet<Object>();
+
+    private final HashMap<Object, List<BatchedImageRequest>> mDeferredRequests =
+            new HashMap<Object, List<BatchedImageRequest>>();
+
+    // Transformed requests waiting for their untransformed image, by its cache key.
+    private final HashMap<String, List<BatchedImageRequest>> mSourceWaiters =
+            new HashMap<String, List<BatchedImageRequest>>();
+
+    // Network requests by the cache key they load, shared by the request for that key and the
+    // transformed requests that start from it. Guarded by itself.
+    private final HashMap<String, NetworkLoad> mNetworkLoads = new HashMap<String, NetworkLoad>();
+
+    private static volatile AWSImageLoader sInstance;
 
     public static void initialize() {
         getInstance();
@@ -87,12 +152,23 @@ public class AWSImageLoader {
 
     public AWSImageLoader(ImageCache imageCache) {
         mCache = imageCache;
+        if (imageCache instanceof AWSCache) {
+            AWSMetrics.getInstance().registerCache(AWSConstants.BITMAP_CACHE_NAME, (AWSCache<?, ?>) imageCache);
+        }
     }
 
     public ImageCache getImageCache() {
         return mCache;
     }
 
+    public void setDiskCache(AWSDiskBitmapCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    public AWSDiskBitmapCache getDiskCache() {
+        return mDiskCache;
+    }
+
     public static ImageListener getImageListener(final ImageView view,
                                                  final int defaultImageResId,
                                                  final int errorImageResId) {
@@ -101,6 +177,8 @@ public class AWSImageLoader {
             public void onResponse(ImageContainer response, boolean isImmediate) {
                 if (response.getBitmap() != null) {
                     view.setImageBitmap(response.getBitmap());
+                } else if (response.getPlaceholder() != null) {
+                    view.setImageBitmap(response.getPlaceholder());
                 } else if (defaultImageResId != 0) {
                     view.setImageResource(defaultImageResId);
                 }
@@ -115,6 +193,26 @@ public class AWSImageLoader {
         };
     }
 
+    /**
+     * Where a view that waits for an image is relative to the screen. The loader runs requests
+     * for visible views first and those that are off-screen last.
+     */
+    public enum Visibility {
+        OFF_SCREEN(Priority.LOW),
+        NEAR_VISIBLE(Priority.MEDIUM),
+        VISIBLE(Priority.HIGH);
+
+        private final Priority mPriority;
+
+        Visibility(Priority priority) {
+            mPriority = priority;
+        }
+
+        public Priority getPriority() {
+            return mPriority;
+        }
+    }
+
     public interface ImageListener {
 
         void onResponse(ImageContainer response, boolean isImmediate);
@@ -128,9 +226,7 @@ public class AWSImageLoader {
 
     public boolean isCached(String requestUrl, int maxWidth, int maxHeight,
                             ImageView.ScaleType scaleType) {
-        throwIfNotOnMainThread();
-
-        String cacheKey = getCacheKey(requestUrl, maxWidth, maxHeight, scaleType);
+        String cacheKey = getCacheKey(requestUrl, maxWidth, maxHeight, scaleType, null);
         return mCache.getBitmap(cacheKey) != null;
     }
 
@@ -147,51 +243,532 @@ public class AWSImageLoader {
 
     public ImageContainer get(String requestUrl, ImageListener imageListener,
                               int maxWidth, int maxHeight, ImageView.ScaleType scaleType) {
+        return get(requestUrl, imageListener, maxWidth, maxHeight, scaleType, null);
+    }
 
-        throwIfNotOnMainThread();
+    /**
+     * Loads an image the same way as {@link #get(String, ImageListener, int, int,
+     * ImageView.ScaleType)}, while the given tag can pause the disk and network work through
+     * {@link #pause(Object)}.
+     */
+    public ImageContainer get(String requestUrl, ImageListener imageListener,
+                              int maxWidth, int maxHeight, ImageView.ScaleType scaleType,
+                              Object tag) {
+        return get(requestUrl, imageListener, maxWidth, maxHeight, scaleType, tag, null);
+    }
 
-        final String cacheKey = getCacheKey(requestUrl, maxWidth, maxHeight, scaleType);
+    /**
+     * Loads an image and applies the given transformations to it on the decode executor. The
+     * result is cached under a key that includes the transformations, so later hits return the
+     * transformed bitmap without transforming it again.
+     */
+    public ImageContainer get(String requestUrl, ImageListener imageListener,
+                              int maxWidth, int maxHeight, ImageView.ScaleType scaleType,
+                              Object tag, List<Transformation> transformations) {
 
-        Bitmap cachedBitmap = mCache.getBitmap(cacheKey);
-        if (cachedBitmap != null) {
-            ImageContainer container = new ImageContainer(cachedBitmap, requestUrl, null, null);
-            imageListener.onResponse(container, true);
-            return container;
+        if (transformations != null && transformations.isEmpty()) {
+            transformations = null;
         }
+        final String cacheKey = getCacheKey(requestUrl, maxWidth, maxHeight, scaleType,
+                transformations);
+
+        while (true) {
+            Bitmap cachedBitmap = getAndAcquire(cacheKey);
+            if (cachedBitmap != null) {
+                ImageContainer container = new ImageContainer(cachedBitmap, requestUrl, null, null);
+                container.isAcquired = mCache instanceof AWSBitmapCache;
+                deliverImmediate(imageListener, container);
+                return container;
+            }
 
-        ImageContainer imageContainer =
-                new ImageContainer(null, requestUrl, cacheKey, imageListener);
+            ImageContainer imageContainer =
+                    new ImageContainer(null, requestUrl, cacheKey, imageListener);
 
-        imageListener.onResponse(imageContainer, true);
+            BatchedImageRequest newRequest = new BatchedImageRequest(imageContainer, requestUrl,
+                    maxWidth, maxHeight, scaleType, cacheKey, transformations);
+            BatchedImageRequest request = mInFlightRequests.putIfAbsent(cacheKey, newRequest);
+            if (request == null) {
+                if (transformations == null) {
+                    attachPlaceholder(imageContainer, requestUrl, maxWidth, maxHeight, scaleType);
+                }
+                deliverImmediate(imageListener, imageContainer);
+                if (!deferIfPaused(tag, newRequest)) {
+                    newRequest.start();
+                }
+                return imageContainer;
+            }
 
-        BatchedImageRequest request = mInFlightRequests.get(cacheKey);
-        if (request != null) {
-            request.addContainer(imageContainer);
-            return imageContainer;
+            if (request.addContainer(imageContainer)) {
+                if (transformations == null) {
+                    attachPlaceholder(imageContainer, requestUrl, maxWidth, maxHeight, scaleType);
+                }
+                deliverImmediate(imageListener, imageContainer);
+                if (!isPaused(tag)) {
+                    request.start();
+                }
+                return imageContainer;
+            }
+            // The request was delivered meanwhile, look the bitmap up again.
+        }
+    }
+
+    /**
+     * Loads a bitmap synchronously from the memory cache, the disk cache or the network, for
+     * callers that need it right away such as app widgets and notifications. The returned bitmap
+     * is never handed to the bitmap pool, as the loader cannot know when it stops being used.
+     *
+     * @return The bitmap, or null if it could not be loaded
+     */
+    public Bitmap getBitmapBlocking(String requestUrl, int maxWidth, int maxHeight,
+                                    ImageView.ScaleType scaleType) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("getBitmapBlocking must not be invoked from the main thread.");
+        }
+
+        final String cacheKey = getCacheKey(requestUrl, maxWidth, maxHeight, scaleType, null);
+
+        Bitmap bitmap = getAndAcquire(cacheKey);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        final String variantKey = findVariant(requestUrl, cacheKey, maxWidth, maxHeight,
+                scaleType, true);
+        if (variantKey != null) {
+            bitmap = scaleVariant(variantKey, maxWidth, maxHeight, scaleType);
+        }
+        final AWSDiskBitmapCache diskCache = mDiskCache;
+        if (bitmap == null && diskCache != null) {
+            bitmap = diskCache.get(cacheKey);
+        }
+        if (bitmap == null) {
+            AWSResponse response = newImageRequest(requestUrl, maxWidth, maxHeight, scaleType,
+                    Priority.MEDIUM).executeForBitmap();
+            if (!response.isSuccess()) {
+                return null;
+            }
+            bitmap = (Bitmap) response.getResult();
+            putInDiskCache(cacheKey, bitmap);
+        }
+        acquire(bitmap);
+        mCache.putBitmap(cacheKey, bitmap);
+        addVariant(requestUrl, cacheKey, scaleType);
+        return bitmap;
+    }
+
+    private void addVariant(String requestUrl, String cacheKey, ImageView.ScaleType scaleType) {
+        Map<String, ImageView.ScaleType> variants;
+        synchronized (mVariants) {
+            variants = mVariants.get(requestUrl);
+            if (variants == null) {
+                variants = new ConcurrentHashMap<String, ImageView.ScaleType>();
+                mVariants.put(requestUrl, variants);
+            }
+        }
+        variants.put(cacheKey, scaleType);
+    }
+
+    /**
+     * Looks for another cached size of the same url. With isLarger, returns the smallest one
+     * that can be scaled down to the requested size; otherwise the largest one, to show while
+     * the requested size loads. Variants that left the cache are dropped from the index.
+     */
+    private String findVariant(String requestUrl, String cacheKey, int maxWidth, int maxHeight,
+                               ImageView.ScaleType scaleType, boolean isLarger) {
+        final Map<String, ImageView.ScaleType> variants = mVariants.get(requestUrl);
+        if (variants == null || (isLarger && maxWidth == 0 && maxHeight == 0)) {
+            return null;
+        }
+        String variantKey = null;
+        long variantArea = 0;
+        for (Map.Entry<String, ImageView.ScaleType> entry : variants.entrySet()) {
+            if (entry.getKey().equals(cacheKey)) {
+                continue;
+            }
+            final Bitmap bitmap = peek(entry.getKey());
+            if (bitmap == null) {
+                variants.remove(entry.getKey());
+                continue;
+            }
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            final long area = (long) width * height;
+            if (isLarger) {
+                // FIT_XY variants are distorted, scale only from ones that keep the aspect ratio.
+                if (entry.getValue() == ImageView.ScaleType.FIT_XY
+                        || Utils.getResizedDimension(maxWidth, maxHeight, width, height, scaleType) > width
+                        || Utils.getResizedDimension(maxHeight, maxWidth, height, width, scaleType) > height) {
+                    continue;
+                }
+                if (variantKey == null || area < variantArea) {
+                    variantKey = entry.getKey();
+                    variantArea = area;
+                }
+            } else if (area > variantArea) {
+                variantKey = entry.getKey();
+                variantArea = area;
+            }
+        }
+        return variantKey;
+    }
+
+    private Bitmap scaleVariant(String variantKey, int maxWidth, int maxHeight,
+                                ImageView.ScaleType scaleType) {
+        final Bitmap variant = getAndAcquire(variantKey);
+        if (variant == null) {
+            return null;
+        }
+        try {
+            final int width = Utils.getResizedDimension(maxWidth, maxHeight,
+                    variant.getWidth(), variant.getHeight(), scaleType);
+            final int height = Utils.getResizedDimension(maxHeight, maxWidth,
+                    variant.getHeight(), variant.getWidth(), scaleType);
+            Bitmap bitmap = Bitmap.createScaledBitmap(variant, width, height, true);
+            // Never cache the same bitmap under two keys, the pool relies on that.
+            if (bitmap == variant) {
+                bitmap = variant.copy(variant.getConfig(), true);
+            }
+            return bitmap;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            release(variant);
+        }
+    }
+
+    // Scales a larger cached size of the url down on the decode executor instead of loading it.
+    private boolean scaleFromVariant(final BatchedImageRequest batchedRequest) {
+        final String variantKey = findVariant(batchedRequest.mRequestUrl, batchedRequest.mCacheKey,
+                batchedRequest.mMaxWidth, batchedRequest.mMaxHeight, batchedRequest.mScaleType, true);
+        if (variantKey == null) {
+            return false;
+        }
+        Core.getInstance().getExecutorSupplier().forDecodeTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                final String cacheKey = batchedRequest.mCacheKey;
+                if (mInFlightRequests.get(cacheKey) != batchedRequest) {
+                    return;
+                }
+                final Bitmap bitmap = scaleVariant(variantKey, batchedRequest.mMaxWidth,
+                        batchedRequest.mMaxHeight, batchedRequest.mScaleType);
+                if (bitmap != null) {
+                    if (batchedRequest.mTransformations != null) {
+                        transform(batchedRequest, bitmap, true);
+                    } else {
+                        onGetImageSuccess(cacheKey, bitmap);
+                    }
+                } else {
+                    batchedRequest.load();
+                }
+            }
+        });
+        return true;
+    }
+
+    private void attachPlaceholder(ImageContainer container, String requestUrl, int maxWidth,
+                                   int maxHeight, ImageView.ScaleType scaleType) {
+        final String variantKey = findVariant(requestUrl, container.mCacheKey, maxWidth,
+                maxHeight, scaleType, false);
+        if (variantKey == null) {
+            return;
+        }
+        synchronized (container) {
+            container.mPlaceholder = getAndAcquire(variantKey);
+            container.isPlaceholderAcquired = container.mPlaceholder != null
+                    && mCache instanceof AWSBitmapCache;
+        }
+    }
+
+    /**
+     * Pauses the disk and network work of images requested with the given tag, e.g. while a
+     * list is flung. Memory cache hits are still delivered right away. Requests made while paused
+     * start on {@link #resume(Object)}, unless all their views were detached or rebound by then.
+     */
+    public void pause(Object tag) {
+        if (tag == null) {
+            return;
+        }
+        synchronized (mPausedTags) {
+            mPausedTags.add(tag);
+        }
+    }
+
+    public void resume(Object tag) {
+        final List<BatchedImageRequest> deferredRequests;
+        synchronized (mPausedTags) {
+            if (!mPausedTags.remove(tag)) {
+                return;
+            }
+            deferredRequests = mDeferredRequests.remove(tag);
+        }
+        if (deferredRequests == null) {
+            return;
+        }
+        for (BatchedImageRequest request : deferredRequests) {
+            if (mInFlightRequests.get(request.mCacheKey) == request) {
+                request.start();
+            }
+        }
+    }
+
+    public boolean isPaused(Object tag) {
+        if (tag == null) {
+            return false;
+        }
+        synchronized (mPausedTags) {
+            return mPausedTags.contains(tag);
+        }
+    }
+
+    private boolean deferIfPaused(Object tag, BatchedImageRequest request) {
+        if (tag == null) {
+            return false;
+        }
+        synchronized (mPausedTags) {
+            if (!mPausedTags.contains(tag)) {
+                return false;
+            }
+            List<BatchedImageRequest> deferredRequests = mDeferredRequests.get(tag);
+            if (deferredRequests == null) {
+                deferredRequests = new ArrayList<BatchedImageRequest>();
+                mDeferredRequests.put(tag, deferredRequests);
+            }
+            deferredRequests.add(request);
+            return true;
+        }
+    }
+
+    private void getFromDiskCache(final BatchedImageRequest batchedRequest) {
+        final AWSDiskBitmapCache diskCache = mDiskCache;
+        Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                final String cacheKey = batchedRequest.mCacheKey;
+                if (mInFlightRequests.get(cacheKey) != batchedRequest) {
+                    return;
+                }
+                final Bitmap bitmap = diskCache.get(cacheKey);
+                if (bitmap != null) {
+                    onGetImageSuccess(cacheKey, bitmap);
+                    return;
+                }
+                final Bitmap source = batchedRequest.mTransformations != null
+                        ? diskCache.get(batchedRequest.mSourceKey) : null;
+                if (source != null) {
+                    transformOnDecodeExecutor(batchedRequest, source, true);
+                } else {
+                    batchedRequest.startNetworkRequest();
+                }
+            }
+        });
+    }
+
+    private void putInDiskCache(final String cacheKey, final Bitmap bitmap) {
+        final AWSDiskBitmapCache diskCache = mDiskCache;
+        if (diskCache == null) {
+            return;
+        }
+        // Hold a reference so the bitmap is not pooled and overwritten while it is written.
+        acquire(bitmap);
+        Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    diskCache.put(cacheKey, bitmap);
+                } finally {
+                    release(bitmap);
+                }
+            }
+        });
+    }
+
+    private void transformOnDecodeExecutor(final BatchedImageRequest batchedRequest,
+                                           final Bitmap source, final boolean isRecyclable) {
+        // A source that is not recyclable is in the memory cache, keep it out of the pool.
+        if (!isRecyclable) {
+            acquire(source);
+        }
+        Core.getInstance().getExecutorSupplier().forDecodeTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transform(batchedRequest, source, isRecyclable);
+                } finally {
+                    if (!isRecyclable) {
+                        release(source);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies the request's transformations to the source and completes the request with the
+     * result, which is also written to the disk cache. Intermediate bitmaps, and the source when
+     * it is recyclable, go back to the bitmap pool.
+     */
+    private void transform(BatchedImageRequest batchedRequest, Bitmap source,
+                           boolean isRecyclable) {
+        final String cacheKey = batchedRequest.mCacheKey;
+        if (mInFlightRequests.get(cacheKey) != batchedRequest) {
+            if (isRecyclable) {
+                AWSBitmapPool.getInstance().put(source);
+            }
+            return;
+        }
+        Bitmap bitmap = source;
+        try {
+            for (Transformation transformation : batchedRequest.mTransformations) {
+                final Bitmap transformed = transformation.transform(bitmap);
+                if (transformed == null) {
+                    throw new IllegalStateException("Transformation " + transformation.key()
+                            + " returned null");
+                }
+                if (transformed != bitmap && (bitmap != source || isRecyclable)) {
+                    AWSBitmapPool.getInstance().put(bitmap);
+                }
+                bitmap = transformed;
+            }
+            // A source that is not recyclable stays cached under its own key, and the pool
+            // relies on a bitmap never being cached under two keys.
+            if (bitmap == source && !isRecyclable) {
+                bitmap = source.copy(source.getConfig(), true);
+                if (bitmap == null) {
+                    throw new IllegalStateException("Could not copy the untransformed bitmap");
+                }
+            }
+        } catch (Exception e) {
+            onGetImageError(cacheKey, new AWSError(e));
+            return;
+        }
+        putInDiskCache(cacheKey, bitmap);
+        onGetImageSuccess(cacheKey, bitmap);
+    }
+
+    // Transformed requests wait for the untransformed image under its own key, so that it is
+    // cached for other transformations of the same size. The request is transformed when that
+    // key completes.
+    private void addSourceWaiter(BatchedImageRequest batchedRequest) {
+        final String sourceKey = batchedRequest.mSourceKey;
+        synchronized (mSourceWaiters) {
+            List<BatchedImageRequest> waiters = mSourceWaiters.get(sourceKey);
+            if (waiters == null) {
+                waiters = new ArrayList<BatchedImageRequest>();
+                mSourceWaiters.put(sourceKey, waiters);
+            }
+            waiters.add(batchedRequest);
+        }
+    }
+
+    private List<BatchedImageRequest> takeSourceWaiters(String sourceKey) {
+        synchronized (mSourceWaiters) {
+            return mSourceWaiters.remove(sourceKey);
+        }
+    }
+
+    private void removeSourceWaiter(BatchedImageRequest batchedRequest) {
+        synchronized (mSourceWaiters) {
+            final List<BatchedImageRequest> waiters =
+                    mSourceWaiters.get(batchedRequest.mSourceKey);
+            if (waiters != null && waiters.remove(batchedRequest) && waiters.isEmpty()) {
+                mSourceWaiters.remove(batchedRequest.mSourceKey);
+            }
+        }
+    }
+
+    /**
+     * Joins the network request that loads the untransformed image of the given request, or
+     * starts one through {@link #makeImageRequest}. Every call must be paired with
+     * {@link #releaseNetworkLoad}.
+     */
+    private NetworkLoad acquireNetworkLoad(BatchedImageRequest batchedRequest, Priority priority) {
+        final String key = batchedRequest.mSourceKey;
+        final NetworkLoad existing;
+        final NetworkLoad load;
+        synchronized (mNetworkLoads) {
+            existing = mNetworkLoads.get(key);
+            if (existing != null) {
+                existing.mUsers++;
+                load = null;
+            } else {
+                load = new NetworkLoad(key);
+                mNetworkLoads.put(key, load);
+            }
+        }
+        if (existing != null) {
+            final AWSRequest request = getRequest(existing);
+            if (request != null && priority.ordinal() > request.getPriority().ordinal()) {
+                request.setPriority(priority);
+            }
+            return existing;
+        }
+
+        final AWSRequest request = makeImageRequest(batchedRequest.mRequestUrl,
+                batchedRequest.mMaxWidth, batchedRequest.mMaxHeight, batchedRequest.mScaleType,
+                key);
+        request.setPriority(priority);
+        boolean isUnused = false;
+        synchronized (mNetworkLoads) {
+            // Gone when the request already completed.
+            if (mNetworkLoads.get(key) == load) {
+                load.mRequest = request;
+                if (load.mUsers == 0) {
+                    mNetworkLoads.remove(key);
+                    isUnused = true;
+                }
+            }
+        }
+        if (isUnused) {
+            cancel(request);
+        }
+        return load;
+    }
+
+    // Null while the request is being created.
+    private AWSRequest getRequest(NetworkLoad load) {
+        synchronized (mNetworkLoads) {
+            return load.mRequest;
+        }
+    }
+
+    // Cancels the network request once no request waits for it anymore.
+    private void releaseNetworkLoad(NetworkLoad load) {
+        final AWSRequest request;
+        synchronized (mNetworkLoads) {
+            if (mNetworkLoads.get(load.mKey) != load || --load.mUsers > 0
+                    || load.mRequest == null) {
+                return;
+            }
+            mNetworkLoads.remove(load.mKey);
+            request = load.mRequest;
         }
+        cancel(request);
+    }
 
-        AWSRequest newRequest = makeImageRequest(requestUrl, maxWidth, maxHeight, scaleType,
-                cacheKey);
+    private void removeNetworkLoad(String key) {
+        synchronized (mNetworkLoads) {
+            mNetworkLoads.remove(key);
+        }
+    }
 
-        mInFlightRequests.put(cacheKey,
-                new BatchedImageRequest(newRequest, imageContainer));
-        return imageContainer;
+    private static void cancel(AWSRequest request) {
+        request.cancel(true);
+        if (request.isCanceled()) {
+            request.destroy();
+            AWSRequestQueue.getInstance().finish(request);
+        }
     }
 
     protected AWSRequest makeImageRequest(String requestUrl, int maxWidth, int maxHeight,
                                           ImageView.ScaleType scaleType, final String cacheKey) {
-        AWSRequest awsRequest = AWS.get(requestUrl)
-                .setTag("ImageRequestTag")
-                .setBitmapMaxHeight(maxHeight)
-                .setBitmapMaxWidth(maxWidth)
-                .setImageScaleType(scaleType)
-                .setBitmapConfig(Bitmap.Config.RGB_565)
-                .setBitmapOptions(mBitmapOptions)
-                .build();
+        AWSRequest awsRequest = newImageRequest(requestUrl, maxWidth, maxHeight, scaleType,
+                Priority.MEDIUM);
 
         awsRequest.getAsBitmap(new BitmapRequestListener() {
             @Override
             public void onResponse(Bitmap response) {
+                putInDiskCache(cacheKey, response);
                 onGetImageSuccess(cacheKey, response);
             }
 
@@ -204,28 +781,68 @@ public class AWSImageLoader {
         return awsRequest;
     }
 
+    private AWSRequest newImageRequest(String requestUrl, int maxWidth, int maxHeight,
+                                       ImageView.ScaleType scaleType, Priority priority) {
+        return AWS.get(requestUrl)
+                .setTag(IMAGE_REQUEST_TAG)
+                .setPriority(priority)
+                .setBitmapMaxHeight(maxHeight)
+                .setBitmapMaxWidth(maxWidth)
+                .setImageScaleType(scaleType)
+                .setBitmapConfig(Bitmap.Config.RGB_565)
+                .setBitmapOptions(mBitmapOptions)
+                .build();
+    }
+
     public void setBitmapDecodeOptions(BitmapFactory.Options bitmapOptions) {
         mBitmapOptions = bitmapOptions;
     }
 
+    /**
+     * Delivers completed images in batches every given milliseconds instead of on the next
+     * frame. A negative delay restores the frame timed delivery.
+     */
     public void setBatchedResponseDelay(int newBatchedResponseDelayMs) {
         mBatchResponseDelayMs = newBatchedResponseDelayMs;
     }
 
 
     protected void onGetImageSuccess(String cacheKey, Bitmap response) {
+        // Held until the batch is delivered, so the bitmap cannot be pooled before that.
+        acquire(response);
         mCache.putBitmap(cacheKey, response);
+        removeNetworkLoad(cacheKey);
+
+        final List<BatchedImageRequest> waiters = takeSourceWaiters(cacheKey);
+        if (waiters != null) {
+            for (BatchedImageRequest waiter : waiters) {
+                transformOnDecodeExecutor(waiter, response, false);
+            }
+        }
 
         BatchedImageRequest request = mInFlightRequests.remove(cacheKey);
 
         if (request != null) {
+            if (request.mTransformations == null) {
+                addVariant(request.mRequestUrl, cacheKey, request.mScaleType);
+            }
             request.mResponseBitmap = response;
 
             batchResponse(cacheKey, request);
+        } else {
+            release(response);
         }
     }
 
     protected void onGetImageError(String cacheKey, AWSError awsError) {
+        removeNetworkLoad(cacheKey);
+        final List<BatchedImageRequest> waiters = takeSourceWaiters(cacheKey);
+        if (waiters != null) {
+            for (BatchedImageRequest waiter : waiters) {
+                onGetImageError(waiter.mCacheKey, awsError);
+            }
+        }
+
         BatchedImageRequest request = mInFlightRequests.remove(cacheKey);
 
         if (request != null) {
@@ -238,6 +855,18 @@ public class AWSImageLoader {
 
         private Bitmap mBitmap;
 
+        private boolean isAcquired;
+
+        private Bitmap mPlaceholder;
+
+        private boolean isPlaceholderAcquired;
+
+        private boolean isDelivered;
+
+        private volatile boolean isCancelled;
+
+        private volatile Visibility mVisibility;
+
         private final ImageListener mListener;
 
         private final String mCacheKey;
@@ -256,28 +885,81 @@ public class AWSImageLoader {
             if (mListener == null) {
                 return;
             }
+            isCancelled = true;
 
             BatchedImageRequest request = mInFlightRequests.get(mCacheKey);
             if (request != null) {
                 boolean canceled = request.removeContainerAndCancelIfNecessary(this);
                 if (canceled) {
-                    mInFlightRequests.remove(mCacheKey);
+                    mInFlightRequests.remove(mCacheKey, request);
                 }
             } else {
-                request = mBatchedResponses.get(mCacheKey);
-                if (request != null) {
-                    request.removeContainerAndCancelIfNecessary(this);
-                    if (request.mContainers.size() == 0) {
+                synchronized (mBatchedResponses) {
+                    request = mBatchedResponses.get(mCacheKey);
+                    if (request != null && request.removeContainer(this)) {
                         mBatchedResponses.remove(mCacheKey);
+                        AWSImageLoader.this.release(request.mResponseBitmap);
                     }
                 }
             }
         }
 
+        /**
+         * Reports where the view waiting for this image is, so the pending request can be
+         * prioritized against the other ones.
+         */
+        public void setVisibility(Visibility visibility) {
+            if (mVisibility == visibility) {
+                return;
+            }
+            mVisibility = visibility;
+            if (mListener == null || mBitmap != null) {
+                return;
+            }
+            BatchedImageRequest request = mInFlightRequests.get(mCacheKey);
+            if (request != null) {
+                request.updatePriority();
+            }
+        }
+
+        public Visibility getVisibility() {
+            return mVisibility;
+        }
+
+        /**
+         * Tells the loader that the bitmap of this container is no longer displayed, so it can
+         * be reused for other images once it leaves the memory cache. The bitmap must not be
+         * drawn after this call.
+         */
+        public synchronized void release() {
+            releasePlaceholder();
+            if (!isAcquired) {
+                return;
+            }
+            isAcquired = false;
+            AWSImageLoader.this.release(mBitmap);
+        }
+
+        private synchronized void releasePlaceholder() {
+            if (!isPlaceholderAcquired) {
+                return;
+            }
+            isPlaceholderAcquired = false;
+            AWSImageLoader.this.release(mPlaceholder);
+        }
+
         public Bitmap getBitmap() {
             return mBitmap;
         }
 
+        /**
+         * A smaller cached size of the same url that can be shown until the bitmap is loaded,
+         * or null. Only meaningful while {@link #getBitmap()} is null.
+         */
+        public synchronized Bitmap getPlaceholder() {
+            return mPlaceholder;
+        }
+
 
         public String getRequestUrl() {
             return mRequestUrl;
@@ -286,17 +968,134 @@ public class AWSImageLoader {
 
     private class BatchedImageRequest {
 
-        private final AWSRequest mRequest;
+        private AWSRequest mRequest;
 
         private Bitmap mResponseBitmap;
 
         private AWSError awsError;
 
+        private boolean isCancelled;
+
+        private boolean isDelivered;
+
+        private boolean isStarted;
+
+        private NetworkLoad mNetworkLoad;
+
         private final LinkedList<ImageContainer> mContainers = new LinkedList<ImageContainer>();
 
-        public BatchedImageRequest(AWSRequest request, ImageContainer container) {
-            mRequest = request;
+        private final String mRequestUrl;
+
+        private final int mMaxWidth;
+
+        private final int mMaxHeight;
+
+        private final ImageView.ScaleType mScaleType;
+
+        private final String mCacheKey;
+
+        private final List<Transformation> mTransformations;
+
+        // Key of the untransformed image, which transformed requests load and disk cache.
+        private final String mSourceKey;
+
+        private Priority mPriority = Priority.MEDIUM;
+
+        public BatchedImageRequest(ImageContainer container, String requestUrl, int maxWidth,
+                                   int maxHeight, ImageView.ScaleType scaleType,
+                                   String cacheKey) {
+            this(container, requestUrl, maxWidth, maxHeight, scaleType, cacheKey, null);
+        }
+
+        public BatchedImageRequest(ImageContainer container, String requestUrl, int maxWidth,
+                                   int maxHeight, ImageView.ScaleType scaleType,
+                                   String cacheKey, List<Transformation> transformations) {
             mContainers.add(container);
+            mRequestUrl = requestUrl;
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            mScaleType = scaleType;
+            mCacheKey = cacheKey;
+            mTransformations = transformations != null
+                    ? new ArrayList<Transformation>(transformations) : null;
+            mSourceKey = transformations != null
+                    ? getCacheKey(requestUrl, maxWidth, maxHeight, scaleType, null) : cacheKey;
+        }
+
+        public void start() {
+            synchronized (this) {
+                if (isStarted || isCancelled) {
+                    return;
+                }
+                isStarted = true;
+            }
+            if (!scaleFromVariant(this)) {
+                load();
+            }
+        }
+
+        public void load() {
+            if (mDiskCache != null) {
+                getFromDiskCache(this);
+            } else {
+                startNetworkRequest();
+            }
+        }
+
+        public void startNetworkRequest() {
+            final Priority priority;
+            synchronized (this) {
+                if (isCancelled) {
+                    return;
+                }
+                priority = mPriority;
+            }
+            if (mTransformations != null) {
+                addSourceWaiter(this);
+            }
+            final NetworkLoad load = acquireNetworkLoad(this, priority);
+            final boolean isCancelledMeanwhile;
+            synchronized (this) {
+                isCancelledMeanwhile = isCancelled;
+                if (!isCancelledMeanwhile) {
+                    mNetworkLoad = load;
+                }
+            }
+            if (isCancelledMeanwhile) {
+                releaseNetworkLoad(load);
+                return;
+            }
+            setRequest(getRequest(load));
+        }
+
+        // Runs at the priority of the most visible view that waits for it.
+        public void updatePriority() {
+            final AWSRequest request;
+            final Priority priority;
+            synchronized (this) {
+                Priority highest = null;
+                for (ImageContainer container : mContainers) {
+                    Priority containerPriority = container.mVisibility != null ?
+                            container.mVisibility.getPriority() : Priority.MEDIUM;
+                    if (highest == null || containerPriority.ordinal() > highest.ordinal()) {
+                        highest = containerPriority;
+                    }
+                }
+                if (highest == null || highest == mPriority) {
+                    return;
+                }
+                mPriority = priority = highest;
+                request = mRequest;
+            }
+            if (request != null) {
+                request.setPriority(priority);
+            }
+        }
+
+        public void setRequest(AWSRequest request) {
+            synchronized (this) {
+                mRequest = request;
+            }
         }
 
         public void setError(AWSError awsError) {
@@ -307,62 +1106,225 @@ public class AWSImageLoader {
             return awsError;
         }
 
-        public void addContainer(ImageContainer container) {
+        public synchronized boolean addContainer(ImageContainer container) {
+            if (isDelivered) {
+                return false;
+            }
             mContainers.add(container);
+            return true;
         }
 
-        public boolean removeContainerAndCancelIfNecessary(ImageContainer container) {
+        public synchronized boolean removeContainer(ImageContainer container) {
             mContainers.remove(container);
-            if (mContainers.size() == 0) {
-                mRequest.cancel(true);
-                if (mRequest.isCanceled()) {
-                    mRequest.destroy();
-                    AWSRequestQueue.getInstance().finish(mRequest);
+            return mContainers.isEmpty();
+        }
+
+        public synchronized List<ImageContainer> takeContainers() {
+            isDelivered = true;
+            return new ArrayList<ImageContainer>(mContainers);
+        }
+
+        public boolean removeContainerAndCancelIfNecessary(ImageContainer container) {
+            final NetworkLoad load;
+            synchronized (this) {
+                mContainers.remove(container);
+                isCancelled = mContainers.isEmpty();
+                load = mNetworkLoad;
+                if (isCancelled) {
+                    mNetworkLoad = null;
                 }
-                return true;
             }
-            return false;
+            if (!isCancelled) {
+                updatePriority();
+                return false;
+            }
+            if (mTransformations != null) {
+                removeSourceWaiter(this);
+            }
+            if (load != null) {
+                releaseNetworkLoad(load);
+            }
+            return true;
+        }
+    }
+
+    private static final class NetworkLoad {
+
+        private final String mKey;
+
+        private AWSRequest mRequest;
+
+        private int mUsers = 1;
+
+        NetworkLoad(String key) {
+            mKey = key;
         }
     }
 
     private void batchResponse(String cacheKey, BatchedImageRequest request) {
-        mBatchedResponses.put(cacheKey, request);
-        if (mRunnable == null) {
-            mRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    for (BatchedImageRequest bir : mBatchedResponses.values()) {
-                        for (ImageContainer container : bir.mContainers) {
-                            if (container.mListener == null) {
-                                continue;
-                            }
-                            if (bir.getError() == null) {
-                                container.mBitmap = bir.mResponseBitmap;
-                                container.mListener.onResponse(container, false);
-                            } else {
-                                container.mListener.onError(bir.getError());
-                            }
-                        }
-                    }
-                    mBatchedResponses.clear();
-                    mRunnable = null;
+        synchronized (mBatchedResponses) {
+            mBatchedResponses.put(cacheKey, request);
+            scheduleDelivery(false);
+        }
+    }
+
+    /**
+     * Delivers on the next frame, or right away when this was the last image in flight so a lone
+     * image does not wait for a frame. Must hold mBatchedResponses.
+     */
+    private void scheduleDelivery(boolean isNextFrame) {
+        if (isDeliveryScheduled) {
+            return;
+        }
+        isDeliveryScheduled = true;
+        final int delayMs = mBatchResponseDelayMs;
+        if (delayMs >= 0) {
+            mHandler.postDelayed(mDeliveryRunnable, delayMs);
+        } else if (!isNextFrame && mInFlightRequests.isEmpty()) {
+            mHandler.post(mDeliveryRunnable);
+        } else if (mFrameDelivery != null) {
+            // Choreographer is per thread, so the frame callback is posted from the main thread.
+            mHandler.post(mFrameDelivery);
+        } else {
+            mHandler.postDelayed(mDeliveryRunnable, FALLBACK_FRAME_DELAY_MS);
+        }
+    }
+
+    // Binds batched images until the frame's budget is spent and leaves the rest for the next
+    // frame, so a burst of completions does not drop frames.
+    private void deliverBatchedResponses() {
+        final boolean isFrameTimed = mBatchResponseDelayMs < 0;
+        final long deadline = System.nanoTime() + FRAME_BIND_BUDGET_NANOS;
+        while (true) {
+            final BatchedImageRequest bir;
+            synchronized (mBatchedResponses) {
+                Iterator<BatchedImageRequest> iterator = mBatchedResponses.values().iterator();
+                if (!iterator.hasNext()) {
+                    isDeliveryScheduled = false;
+                    return;
+                }
+                if (isFrameTimed && System.nanoTime() > deadline) {
+                    isDeliveryScheduled = false;
+                    scheduleDelivery(true);
+                    return;
                 }
+                bir = iterator.next();
+                iterator.remove();
+            }
+            deliverBatchedResponse(bir);
+        }
+    }
+
+    private void deliverBatchedResponse(BatchedImageRequest bir) {
+        for (ImageContainer container : bir.takeContainers()) {
+            if (container.mListener == null || container.isCancelled) {
+                continue;
+            }
+            container.isDelivered = true;
+            if (bir.getError() == null) {
+                container.mBitmap = bir.mResponseBitmap;
+                acquire(container);
+                container.mListener.onResponse(container, false);
+                // The listener replaced the placeholder, unlike on error where it may stay.
+                container.releasePlaceholder();
+            } else {
+                container.mListener.onError(bir.getError());
+            }
+        }
+        release(bir.mResponseBitmap);
+    }
+
+    // Immediate responses from other threads are posted, and skipped once the final response
+    // has already been delivered to the container.
+    private void deliverImmediate(final ImageListener listener, final ImageContainer container) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            listener.onResponse(container, true);
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!container.isDelivered && !container.isCancelled) {
+                    listener.onResponse(container, true);
+                }
+            }
+        });
+    }
+
+    // Looks at a cached bitmap without counting it as a use, so browsing the variants leaves
+    // the stats and the eviction order alone.
+    private Bitmap peek(String cacheKey) {
+        if (mCache instanceof AWSBitmapCache) {
+            return ((AWSBitmapCache) mCache).peek(cacheKey);
+        }
+        return mCache.getBitmap(cacheKey);
+    }
+
+    private Bitmap getAndAcquire(String cacheKey) {
+        if (mCache instanceof AWSBitmapCache) {
+            return ((AWSBitmapCache) mCache).getAndAcquire(cacheKey);
+        }
+        return mCache.getBitmap(cacheKey);
+    }
 
-            };
-            mHandler.postDelayed(mRunnable, mBatchResponseDelayMs);
+    private void acquire(ImageContainer container) {
+        if (mCache instanceof AWSBitmapCache && container.mBitmap != null) {
+            ((AWSBitmapCache) mCache).acquire(container.mBitmap);
+            container.isAcquired = true;
         }
     }
 
-    private void throwIfNotOnMainThread() {
-        if (Looper.myLooper() != Looper.getMainLooper()) {
-            throw new IllegalStateException("ImageLoader must be invoked from the main thread.");
+    private void acquire(Bitmap bitmap) {
+        if (mCache instanceof AWSBitmapCache) {
+            ((AWSBitmapCache) mCache).acquire(bitmap);
+        }
+    }
+
+    private void release(Bitmap bitmap) {
+        if (mCache instanceof AWSBitmapCache) {
+            ((AWSBitmapCache) mCache).release(bitmap);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameDelivery implements Runnable, Choreographer.FrameCallback {
+
+        private final Runnable mDelivery;
+
+        FrameDelivery(Runnable delivery) {
+            mDelivery = delivery;
+        }
+
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mDelivery.run();
         }
     }
 
     private static String getCacheKey(String url, int maxWidth, int maxHeight,
-                                      ImageView.ScaleType scaleType) {
-        return new StringBuilder(url.length() + 12).append("#W").append(maxWidth)
-                .append("#H").append(maxHeight).append("#S").append(scaleType.ordinal()).append(url)
-                .toString();
+                                      ImageView.ScaleType scaleType,
+                                      List<Transformation> transformations) {
+        StringBuilder builder = new StringBuilder(url.length() + 12).append("#W").append(maxWidth)
+                .append("#H").append(maxHeight).append("#S").append(scaleType.ordinal());
+        if (transformations != null) {
+            builder.append("#T").append(getTransformationKey(transformations));
+        }
+        return builder.append(url).toString();
+    }
+
+    public static String getTransformationKey(List<Transformation> transformations) {
+        if (transformations == null || transformations.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Transformation transformation : transformations) {
+            builder.append(transformation.key()).append('|');
+        }
+        return builder.toString();
     }
 }
@@ -20,11 +20,17 @@ package com.android.aws.internal;
 import com.android.aws.common.AWSRequest;
 import com.android.aws.common.Priority;
 import com.android.aws.core.Core;
+import com.android.aws.metrics.AWSMetrics;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class AWSRequestQueue {
@@ -32,6 +38,7 @@ public class AWSRequestQueue {
     private final Set<AWSRequest> mCurrentRequests =
             Collections.newSetFromMap(new ConcurrentHashMap<AWSRequest, Boolean>());
     private AtomicInteger mSequenceGenerator = new AtomicInteger();
+    private final Map<String, List<AWSRequest>> mRevalidations = new HashMap<>();
     private static AWSRequestQueue sInstance = null;
 
     public static void initialize() {
@@ -113,6 +120,7 @@ public class AWSRequestQueue {
         }
         try {
             request.setSequenceNumber(getSequenceNumber());
+            request.getTiming().markEnqueued();
             if (request.getPriority() == Priority.IMMEDIATE) {
                 request.setFuture(Core.getInstance()
                         .getExecutorSupplier()
@@ -124,12 +132,36 @@ public class AWSRequestQueue {
                         .forNetworkTasks()
                         .submit(new InternalRunnable(request)));
             }
+            AWSMetrics.getInstance().onRequestQueued();
         } catch (Exception e) {
             e.printStackTrace();
         }
         return request;
     }
 
+    /**
+     * Returns false if the caller should revalidate the url itself, or true if a revalidation
+     * of the same url is already running and the request was queued behind it.
+     */
+    public boolean joinRevalidation(String url, AWSRequest request) {
+        synchronized (mRevalidations) {
+            List<AWSRequest> followers = mRevalidations.get(url);
+            if (followers == null) {
+                mRevalidations.put(url, new ArrayList<AWSRequest>());
+                return false;
+            }
+            followers.add(request);
+            return true;
+        }
+    }
+
+    public List<AWSRequest> completeRevalidation(String url) {
+        synchronized (mRevalidations) {
+            List<AWSRequest> followers = mRevalidations.remove(url);
+            return followers != null ? followers : Collections.<AWSRequest>emptyList();
+        }
+    }
+
     public void finish(AWSRequest request) {
         try {
             mCurrentRequests.remove(request);
@@ -151,6 +183,33 @@ public class AWSRequestQueue {
         return false;
     }
 
+    public void updatePriority(AWSRequest request) {
+        final Future future = request.getFuture();
+        if (future == null || request.getPriority() == Priority.IMMEDIATE) {
+            return;
+        }
+        Core.getInstance().getExecutorSupplier().forNetworkTasks()
+                .updatePriority(future, request.getPriority());
+    }
+
+    public boolean hasRequestsAbove(Priority priority) {
+        for (AWSRequest request : mCurrentRequests) {
+            if (request.getPriority().ordinal() > priority.ordinal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isUrlInFlight(String url) {
+        for (AWSRequest request : mCurrentRequests) {
+            if (url.equals(request.getUrl())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isRequestWithTheGivenTag(AWSRequest request, Object tag) {
         if (request.getTag() == null) {
             return false;
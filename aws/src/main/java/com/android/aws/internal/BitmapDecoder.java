@@ -0,0 +1,143 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.widget.ImageView;
+
+import com.android.aws.utils.Utils;
+
+import java.io.IOException;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Memory admission for bitmap decodes. Decodes run in parallel on the decode executor. The
+ * network thread reserves the memory a decode is estimated to need from the image bounds before
+ * it reads the body, so a burst of large images holds network threads back instead of queueing
+ * bodies for the decoder and running out of memory. A single decode larger than the whole
+ * budget is still admitted once nothing else is decoding.
+ */
+public final class BitmapDecoder {
+
+    private static final long MAX_DECODE_BYTES = Runtime.getRuntime().maxMemory() / 8;
+
+    private static final Object sLock = new Object();
+    private static long sBytesInFlight;
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Reads the whole body into memory on the calling network thread, so the connection is
+     * released and the network timing ends before the decode is queued.
+     */
+    public static Response buffer(Response response) throws IOException {
+        ResponseBody body = response.body();
+        Buffer buffer = new Buffer();
+        body.source().readAll(buffer);
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), buffer.size(), buffer))
+                .build();
+    }
+
+    /**
+     * Reserves the part of a buffered body that admission did not count, because its length was
+     * not announced or was wrong. Does not wait, the bytes are already in memory.
+     *
+     * @return The number of bytes additionally reserved
+     */
+    public static long reserveBuffered(Response response, Response bufferedResponse) {
+        final long bytes = bufferedResponse.body().contentLength()
+                - Math.max(response.body().contentLength(), 0);
+        if (bytes <= 0) {
+            return 0;
+        }
+        synchronized (sLock) {
+            sBytesInFlight += bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Blocks until the decode of this response fits in the memory budget.
+     *
+     * @return The number of bytes reserved, to be given back through {@link #release(long)}
+     */
+    public static long admit(Response response, int maxWidth, int maxHeight,
+                             Bitmap.Config decodeConfig, ImageView.ScaleType scaleType)
+            throws IOException {
+        final long bytes = estimate(response.body(), maxWidth, maxHeight,
+                decodeConfig, scaleType);
+        synchronized (sLock) {
+            while (sBytesInFlight > 0 && sBytesInFlight + bytes > MAX_DECODE_BYTES) {
+                try {
+                    sLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            sBytesInFlight += bytes;
+        }
+        return bytes;
+    }
+
+    public static void release(long bytes) {
+        synchronized (sLock) {
+            sBytesInFlight -= bytes;
+            sLock.notifyAll();
+        }
+    }
+
+    private static long estimate(ResponseBody body, int maxWidth, int maxHeight,
+                                 Bitmap.Config decodeConfig, ImageView.ScaleType scaleType)
+            throws IOException {
+        final BufferedSource source = body.source();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        Utils.decodeBounds(source, options);
+        // The body is buffered for the decode, an unknown length is reserved once it is read.
+        final long encodedBytes = Math.max(body.contentLength(), 0);
+        final int actualWidth = options.outWidth;
+        final int actualHeight = options.outHeight;
+        if (actualWidth <= 0 || actualHeight <= 0) {
+            return encodedBytes;
+        }
+        final int desiredWidth = Utils.getResizedDimension(maxWidth, maxHeight,
+                actualWidth, actualHeight, scaleType);
+        final int desiredHeight = Utils.getResizedDimension(maxHeight, maxWidth,
+                actualHeight, actualWidth, scaleType);
+        final int sampleSize = (maxWidth == 0 && maxHeight == 0) ? 1 :
+                Utils.findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
+        final int bytesPerPixel = getBytesPerPixel(decodeConfig);
+        final long sampledBytes = (long) (actualWidth / sampleSize + 1)
+                * (actualHeight / sampleSize + 1) * bytesPerPixel;
+        final long desiredBytes = (long) desiredWidth * desiredHeight * bytesPerPixel;
+        // The buffered body, the sampled decode and a possible scaled copy live at once.
+        return encodedBytes + sampledBytes + desiredBytes;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444 ? 2 : 4;
+    }
+}
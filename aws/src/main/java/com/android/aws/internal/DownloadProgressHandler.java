@@ -17,35 +17,20 @@
 
 package com.android.aws.internal;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-
-import com.android.aws.common.AWSConstants;
 import com.android.aws.interfaces.DownloadProgressListener;
-import com.android.aws.model.Progress;
 
-public class DownloadProgressHandler extends Handler {
+public class DownloadProgressHandler extends ProgressHandler {
 
     private final DownloadProgressListener mDownloadProgressListener;
 
     public DownloadProgressHandler(DownloadProgressListener downloadProgressListener) {
-        super(Looper.getMainLooper());
         mDownloadProgressListener = downloadProgressListener;
     }
 
     @Override
-    public void handleMessage(Message msg) {
-        switch (msg.what) {
-            case AWSConstants.UPDATE:
-                if (mDownloadProgressListener != null) {
-                    final Progress progress = (Progress) msg.obj;
-                    mDownloadProgressListener.onProgress(progress.currentBytes, progress.totalBytes);
-                }
-                break;
-            default:
-                super.handleMessage(msg);
-                break;
+    protected void onProgress(long currentBytes, long totalBytes) {
+        if (mDownloadProgressListener != null) {
+            mDownloadProgressListener.onProgress(currentBytes, totalBytes);
         }
     }
 }
@@ -0,0 +1,102 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import com.android.aws.interfaces.UploadProgressListener;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.Util;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Streams a region of a file straight from disk. The file is re-opened on every
+ * {@link #writeTo(BufferedSink)} so the body can be replayed when a part is retried.
+ */
+public class FilePartRequestBody extends RequestBody {
+
+    private static final long SEGMENT_SIZE = 8 * 1024;
+
+    private final MediaType mContentType;
+    private final File mFile;
+    private final long mOffset;
+    private final long mLength;
+    private final UploadProgressListener mProgressListener;
+
+    public FilePartRequestBody(MediaType contentType, File file, long offset, long length,
+                               UploadProgressListener progressListener) {
+        mContentType = contentType;
+        mFile = file;
+        mOffset = offset;
+        mLength = length;
+        mProgressListener = progressListener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mContentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return mLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        FileInputStream stream = null;
+        Source source = null;
+        try {
+            stream = new FileInputStream(mFile);
+            long skipped = 0;
+            while (skipped < mOffset) {
+                long count = stream.skip(mOffset - skipped);
+                if (count <= 0) {
+                    throw new EOFException("Could not seek to part offset " + mOffset);
+                }
+                skipped += count;
+            }
+            source = Okio.source(stream);
+            long remaining = mLength;
+            while (remaining > 0) {
+                long read = source.read(sink.buffer(), Math.min(SEGMENT_SIZE, remaining));
+                if (read == -1) {
+                    throw new EOFException("File ended before the part was fully written");
+                }
+                remaining -= read;
+                sink.emitCompleteSegments();
+                if (mProgressListener != null) {
+                    mProgressListener.onProgress(mLength - remaining, mLength);
+                }
+            }
+        } finally {
+            if (source != null) {
+                Util.closeQuietly(source);
+            } else {
+                Util.closeQuietly(stream);
+            }
+        }
+    }
+}
@@ -18,12 +18,16 @@
 package com.android.aws.internal;
 
 
+import android.Manifest;
 import android.content.Context;
-import android.net.TrafficStats;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 
 import com.android.aws.common.AWSConstants;
 import com.android.aws.common.AWSRequest;
-import com.android.aws.common.ConnectionClassManager;
+import com.android.aws.common.CacheTier;
+import com.android.aws.common.OfflinePolicy;
 import com.android.aws.error.AWSError;
 import com.android.aws.interceptors.HttpLoggingInterceptor;
 import com.android.aws.interceptors.HttpLoggingInterceptor.Level;
@@ -33,6 +37,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.CacheControl;
+import okhttp3.Call;
 import okhttp3.Headers;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -58,11 +64,22 @@ public final class InternalNetworking {
 
     public static String sUserAgent = null;
 
+    public static OfflinePolicy sOfflinePolicy = null;
+
+    private static Context sContext = null;
+
+    private static Boolean sCanReadNetworkState = null;
+
     public static Response performSimpleRequest(AWSRequest request) throws AWSError {
+        return performSimpleRequest(request, request.getCacheControl());
+    }
+
+    public static Response performSimpleRequest(AWSRequest request, CacheControl cacheControl)
+            throws AWSError {
         Request okHttpRequest;
         Response okHttpResponse;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
             RequestBody requestBody = null;
             switch (request.getMethod()) {
@@ -71,17 +88,17 @@ public final class InternalNetworking {
                     break;
                 }
                 case POST: {
-                    requestBody = request.getRequestBody();
+                    requestBody = getRequestBody(request);
                     builder = builder.post(requestBody);
                     break;
                 }
                 case PUT: {
-                    requestBody = request.getRequestBody();
+                    requestBody = getRequestBody(request);
                     builder = builder.put(requestBody);
                     break;
                 }
                 case DELETE: {
-                    requestBody = request.getRequestBody();
+                    requestBody = getRequestBody(request);
                     builder = builder.delete(requestBody);
                     break;
                 }
@@ -94,34 +111,41 @@ public final class InternalNetworking {
                     break;
                 }
                 case PATCH: {
-                    requestBody = request.getRequestBody();
+                    requestBody = getRequestBody(request);
                     builder = builder.patch(requestBody);
                     break;
                 }
             }
-            if (request.getCacheControl() != null) {
-                builder.cacheControl(request.getCacheControl());
+            if (cacheControl != null) {
+                builder.cacheControl(cacheControl);
             }
             okHttpRequest = builder.build();
 
-            if (request.getOkHttpClient() != null) {
-                request.setCall(request.getOkHttpClient().newBuilder().cache(sHttpClient.cache()).build().newCall(okHttpRequest));
-            } else {
-                request.setCall(sHttpClient.newCall(okHttpRequest));
-            }
+            final OfflinePolicy offlinePolicy = getOfflinePolicy(request, cacheControl);
             final long startTime = System.currentTimeMillis();
-            final long startBytes = TrafficStats.getTotalRxBytes();
-            okHttpResponse = request.getCall().execute();
+            okHttpResponse = null;
+            if (offlinePolicy != null && isKnownOffline()) {
+                okHttpResponse = executeFromCache(request, okHttpRequest, offlinePolicy);
+            }
+            if (okHttpResponse == null) {
+                request.setCall(newSimpleCall(request, okHttpRequest));
+                try {
+                    okHttpResponse = request.getCall().execute();
+                } catch (IOException ioe) {
+                    if (offlinePolicy == null || request.isCanceled()) {
+                        throw ioe;
+                    }
+                    okHttpResponse = executeFromCache(request, okHttpRequest, offlinePolicy);
+                    if (okHttpResponse == null) {
+                        throw ioe;
+                    }
+                }
+            }
+            request.getTiming().setCacheTier(okHttpResponse.networkResponse() == null
+                    ? CacheTier.DISK : CacheTier.NETWORK);
             final long timeTaken = System.currentTimeMillis() - startTime;
+            Utils.sendCompressionAnalytics(request);
             if (okHttpResponse.cacheResponse() == null) {
-                final long finalBytes = TrafficStats.getTotalRxBytes();
-                final long diffBytes;
-                if (startBytes == TrafficStats.UNSUPPORTED || finalBytes == TrafficStats.UNSUPPORTED) {
-                    diffBytes = okHttpResponse.body().contentLength();
-                } else {
-                    diffBytes = finalBytes - startBytes;
-                }
-                ConnectionClassManager.getInstance().updateBandwidth(diffBytes, timeTaken);
                 Utils.sendAnalytics(request.getAnalyticsListener(), timeTaken,
                         (requestBody != null &&
                                 requestBody.contentLength() != 0) ? requestBody.contentLength() : -1,
@@ -141,11 +165,99 @@ public final class InternalNetworking {
         return okHttpResponse;
     }
 
+    private static Call newSimpleCall(AWSRequest request, Request okHttpRequest) {
+        if (request.getOkHttpClient() != null) {
+            return request.getOkHttpClient().newBuilder().cache(sHttpClient.cache())
+                    .eventListenerFactory(NetworkEventListener.factory(
+                            request.getOkHttpClient().eventListenerFactory()))
+                    .build().newCall(okHttpRequest);
+        }
+        return sHttpClient.newCall(okHttpRequest);
+    }
+
+    private static OfflinePolicy getOfflinePolicy(AWSRequest request, CacheControl cacheControl) {
+        if (request.getMethod() != GET || (cacheControl != null
+                && (cacheControl.noCache() || cacheControl.onlyIfCached()))) {
+            return null;
+        }
+        return request.getOfflinePolicy() != null ? request.getOfflinePolicy() : sOfflinePolicy;
+    }
+
+    private static Response executeFromCache(AWSRequest request, Request okHttpRequest,
+                                             OfflinePolicy offlinePolicy) throws IOException {
+        request.setCall(newSimpleCall(request, okHttpRequest.newBuilder()
+                .cacheControl(offlinePolicy.getCacheControl())
+                .build()));
+        Response response = request.getCall().execute();
+        if (response.cacheResponse() == null) {
+            response.close();
+            return null;
+        }
+        request.setStale(isStale(response));
+        return response;
+    }
+
+    // OkHttp adds a 110 warning when it serves a cached response past its freshness lifetime.
+    private static boolean isStale(Response response) {
+        for (String warning : response.headers("Warning")) {
+            if (warning.startsWith("110")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKnownOffline() {
+        final Context context = sContext;
+        if (context == null) {
+            return false;
+        }
+        if (sCanReadNetworkState == null) {
+            sCanReadNetworkState = context.checkCallingOrSelfPermission(
+                    Manifest.permission.ACCESS_NETWORK_STATE) == PackageManager.PERMISSION_GRANTED;
+        }
+        if (!sCanReadNetworkState) {
+            return false;
+        }
+        try {
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivityManager == null) {
+                return false;
+            }
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            return networkInfo == null || !networkInfo.isConnectedOrConnecting();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public static void setContext(Context context) {
+        sContext = context;
+    }
+
+    public static Context getContext() {
+        return sContext;
+    }
+
+    public static void setOfflinePolicy(OfflinePolicy offlinePolicy) {
+        sOfflinePolicy = offlinePolicy;
+    }
+
+    private static RequestBody getRequestBody(AWSRequest request) {
+        RequestBody requestBody = request.getRequestBody();
+        if (request.hasUploadProgressListener()) {
+            return new RequestProgressBody(requestBody, request.getUploadProgressListener());
+        }
+        return requestBody;
+    }
+
     public static Response performDownloadRequest(final AWSRequest request) throws AWSError {
         Request okHttpRequest;
         Response okHttpResponse;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
             builder = builder.get();
             if (request.getCacheControl() != null) {
@@ -157,6 +269,8 @@ public final class InternalNetworking {
 
             if (request.getOkHttpClient() != null) {
                 okHttpClient = request.getOkHttpClient().newBuilder().cache(sHttpClient.cache())
+                        .eventListenerFactory(NetworkEventListener.factory(
+                                request.getOkHttpClient().eventListenerFactory()))
                         .addNetworkInterceptor(new Interceptor() {
                             @Override
                             public Response intercept(Chain chain) throws IOException {
@@ -182,19 +296,12 @@ public final class InternalNetworking {
             }
             request.setCall(okHttpClient.newCall(okHttpRequest));
             final long startTime = System.currentTimeMillis();
-            final long startBytes = TrafficStats.getTotalRxBytes();
             okHttpResponse = request.getCall().execute();
+            request.getTiming().setCacheTier(okHttpResponse.networkResponse() == null
+                    ? CacheTier.DISK : CacheTier.NETWORK);
             Utils.saveFile(okHttpResponse, request.getDirPath(), request.getFileName());
             final long timeTaken = System.currentTimeMillis() - startTime;
             if (okHttpResponse.cacheResponse() == null) {
-                final long finalBytes = TrafficStats.getTotalRxBytes();
-                final long diffBytes;
-                if (startBytes == TrafficStats.UNSUPPORTED || finalBytes == TrafficStats.UNSUPPORTED) {
-                    diffBytes = okHttpResponse.body().contentLength();
-                } else {
-                    diffBytes = finalBytes - startBytes;
-                }
-                ConnectionClassManager.getInstance().updateBandwidth(diffBytes, timeTaken);
                 Utils.sendAnalytics(request.getAnalyticsListener(), timeTaken, -1,
                         okHttpResponse.body().contentLength(), false);
             } else if (request.getAnalyticsListener() != null) {
@@ -219,7 +326,7 @@ public final class InternalNetworking {
         Request okHttpRequest;
         Response okHttpResponse;
         try {
-            Request.Builder builder = new Request.Builder().url(request.getUrl());
+            Request.Builder builder = new Request.Builder().url(request.getUrl()).tag(request);
             addHeadersToRequestBuilder(builder, request);
             final RequestBody requestBody = request.getMultiPartRequestBody();
             final long requestBodyLength = requestBody.contentLength();
@@ -232,6 +339,8 @@ public final class InternalNetworking {
                 request.setCall(request.getOkHttpClient()
                         .newBuilder()
                         .cache(sHttpClient.cache())
+                        .eventListenerFactory(NetworkEventListener.factory(
+                                request.getOkHttpClient().eventListenerFactory()))
                         .build()
                         .newCall(okHttpRequest));
             } else {
@@ -239,7 +348,10 @@ public final class InternalNetworking {
             }
             final long startTime = System.currentTimeMillis();
             okHttpResponse = request.getCall().execute();
+            request.getTiming().setCacheTier(okHttpResponse.networkResponse() == null
+                    ? CacheTier.DISK : CacheTier.NETWORK);
             final long timeTaken = System.currentTimeMillis() - startTime;
+            Utils.sendCompressionAnalytics(request);
             if (request.getAnalyticsListener() != null) {
                 if (okHttpResponse.cacheResponse() == null) {
                     Utils.sendAnalytics(request.getAnalyticsListener(), timeTaken,
@@ -284,6 +396,7 @@ public final class InternalNetworking {
 
     public static OkHttpClient getDefaultClient() {
         return new OkHttpClient().newBuilder()
+                .eventListenerFactory(NetworkEventListener.factory(null))
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(60, TimeUnit.SECONDS)
@@ -291,8 +404,13 @@ public final class InternalNetworking {
     }
 
     public static void setClientWithCache(Context context) {
+        setClientWithCache(context, AWSConstants.MAX_CACHE_SIZE);
+    }
+
+    public static void setClientWithCache(Context context, long maxCacheSize) {
         sHttpClient = new OkHttpClient().newBuilder()
-                .cache(Utils.getCache(context, AWSConstants.MAX_CACHE_SIZE, AWSConstants.CACHE_DIR_NAME))
+                .cache(Utils.getCache(context, maxCacheSize, AWSConstants.CACHE_DIR_NAME))
+                .eventListenerFactory(NetworkEventListener.factory(null))
                 .connectTimeout(60, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(60, TimeUnit.SECONDS)
@@ -304,6 +422,13 @@ public final class InternalNetworking {
     }
 
     public static void setClient(OkHttpClient okHttpClient) {
+        if (okHttpClient != null && !(okHttpClient.eventListenerFactory()
+                instanceof NetworkEventListener.Factory)) {
+            okHttpClient = okHttpClient.newBuilder()
+                    .eventListenerFactory(NetworkEventListener.factory(
+                            okHttpClient.eventListenerFactory()))
+                    .build();
+        }
         sHttpClient = okHttpClient;
     }
 
@@ -17,8 +17,10 @@
 
 package com.android.aws.internal;
 
+import com.android.aws.cache.AWSResponseCache;
 import com.android.aws.common.AWSRequest;
 import com.android.aws.common.AWSResponse;
+import com.android.aws.common.CacheTier;
 import com.android.aws.common.Priority;
 import com.android.aws.common.ResponseType;
 import com.android.aws.core.Core;
@@ -26,6 +28,10 @@ import com.android.aws.error.AWSError;
 import com.android.aws.utils.SourceCloseUtil;
 import com.android.aws.utils.Utils;
 
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
 import okhttp3.Response;
 
 import static com.android.aws.common.RequestType.DOWNLOAD;
@@ -34,22 +40,44 @@ import static com.android.aws.common.RequestType.SIMPLE;
 
 public class InternalRunnable implements Runnable {
 
-    private final Priority priority;
+    private static final int EXECUTE = 0;
+    private static final int REVALIDATE = 1;
+    private static final int REFRESH_FROM_CACHE = 2;
+
+    private volatile Priority priority;
     public final int sequence;
     public final AWSRequest request;
+    private final int mode;
+    private final String cachedValidator;
 
     public InternalRunnable(AWSRequest request) {
+        this(request, request.getPriority(), EXECUTE, null);
+    }
+
+    private InternalRunnable(AWSRequest request, Priority priority, int mode,
+                             String cachedValidator) {
         this.request = request;
         this.sequence = request.getSequenceNumber();
-        this.priority = request.getPriority();
+        this.priority = priority;
+        this.mode = mode;
+        this.cachedValidator = cachedValidator;
     }
 
     @Override
     public void run() {
+        request.getTiming().markStarted();
         request.setRunning(true);
         switch (request.getRequestType()) {
             case SIMPLE:
-                executeSimpleRequest();
+                if (mode == REVALIDATE) {
+                    executeRevalidation();
+                } else if (mode == REFRESH_FROM_CACHE) {
+                    executeRefreshFromCache();
+                } else if (request.isStaleWhileRevalidate()) {
+                    executeStaleWhileRevalidate();
+                } else {
+                    executeSimpleRequest();
+                }
                 break;
             case DOWNLOAD:
                 executeDownloadRequest();
@@ -61,9 +89,28 @@ public class InternalRunnable implements Runnable {
         request.setRunning(false);
     }
 
+    private boolean deliverFromMemoryCache() {
+        final AWSResponseCache responseCache = AWSResponseCache.getInstance();
+        if (responseCache == null) {
+            return false;
+        }
+        Object cachedResult = responseCache.getResult(request);
+        if (cachedResult == null) {
+            return false;
+        }
+        request.getTiming().setCacheTier(CacheTier.MEMORY);
+        Utils.sendAnalytics(request.getAnalyticsListener(), 0, 0, 0, true);
+        request.deliverResponse(AWSResponse.success(cachedResult));
+        return true;
+    }
+
     private void executeSimpleRequest() {
         Response okHttpResponse = null;
         try {
+            if (deliverFromMemoryCache()) {
+                return;
+            }
+            final AWSResponseCache responseCache = AWSResponseCache.getInstance();
             okHttpResponse = InternalNetworking.performSimpleRequest(request);
 
             if (okHttpResponse == null) {
@@ -81,12 +128,34 @@ public class InternalRunnable implements Runnable {
                 return;
             }
 
+            if (request.getResponseAs() == ResponseType.BITMAP) {
+                // Reserved here, before the body is read, so that network threads wait for
+                // memory instead of queueing bodies for the decode executor. The body is read
+                // here too, so the network timing does not include the decode.
+                request.getTiming().markDecodeEnqueued();
+                long decodeBytes = request.admitBitmapDecode(okHttpResponse);
+                final Response bufferedResponse;
+                try {
+                    bufferedResponse = BitmapDecoder.buffer(okHttpResponse);
+                } catch (Exception e) {
+                    BitmapDecoder.release(decodeBytes);
+                    throw e;
+                }
+                decodeBytes += BitmapDecoder.reserveBuffered(okHttpResponse, bufferedResponse);
+                enqueueDecode(bufferedResponse, decodeBytes);
+                return;
+            }
+
             AWSResponse response = request.parseResponse(okHttpResponse);
             if (!response.isSuccess()) {
                 deliverError(request, response.getError());
                 return;
             }
             response.setOkHttpResponse(okHttpResponse);
+            response.setStale(request.isStale());
+            if (responseCache != null) {
+                responseCache.putResult(request, okHttpResponse, response.getResult());
+            }
             request.deliverResponse(response);
         } catch (Exception e) {
             deliverError(request, Utils.getErrorForConnection(new AWSError(e)));
@@ -95,6 +164,144 @@ public class InternalRunnable implements Runnable {
         }
     }
 
+    private void enqueueDecode(final Response okHttpResponse, final long decodeBytes) {
+        final Runnable decode = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decode(okHttpResponse);
+                } finally {
+                    BitmapDecoder.release(decodeBytes);
+                }
+            }
+        };
+        try {
+            Core.getInstance().getExecutorSupplier().forDecodeTasks().execute(decode);
+        } catch (RuntimeException e) {
+            BitmapDecoder.release(decodeBytes);
+            throw e;
+        }
+    }
+
+    private void decode(Response okHttpResponse) {
+        if (request.isCanceled()) {
+            deliverError(request, new AWSError());
+            return;
+        }
+        try {
+            AWSResponse response = request.decodeAdmittedBitmap(okHttpResponse);
+            if (!response.isSuccess()) {
+                deliverError(request, response.getError());
+                return;
+            }
+            response.setOkHttpResponse(okHttpResponse);
+            response.setStale(request.isStale());
+            request.deliverResponse(response);
+        } catch (Exception e) {
+            deliverError(request, Utils.getErrorForParse(new AWSError(e)));
+        }
+    }
+
+    private void executeStaleWhileRevalidate() {
+        if (deliverFromMemoryCache()) {
+            return;
+        }
+        AWSResponse response = readFromCache();
+        if (response == null) {
+            executeSimpleRequest();
+            return;
+        }
+        request.deliverStaleResponse(response);
+        final String url = request.getUrl();
+        if (AWSRequestQueue.getInstance().joinRevalidation(url, request)) {
+            return;
+        }
+        Response cachedResponse = response.getOkHttpResponse();
+        String validator = cachedResponse.header("ETag");
+        if (validator == null) {
+            validator = cachedResponse.header("Last-Modified");
+        }
+        // Not tracked as the request future: the revalidation must always run to completion so
+        // that coalesced followers are released, cancelling the call is enough to stop it early.
+        Core.getInstance().getExecutorSupplier().forNetworkTasks()
+                .submit(new InternalRunnable(request, Priority.LOW, REVALIDATE, validator));
+    }
+
+    private void executeRevalidation() {
+        boolean changed = false;
+        Response okHttpResponse = null;
+        try {
+            okHttpResponse = InternalNetworking.performSimpleRequest(request,
+                    new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build());
+            if (isChanged(okHttpResponse)) {
+                AWSResponse response = request.parseResponse(okHttpResponse);
+                if (response.isSuccess()) {
+                    changed = true;
+                    response.setOkHttpResponse(okHttpResponse);
+                    request.deliverResponse(response);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            SourceCloseUtil.close(okHttpResponse, request);
+        }
+        if (!changed) {
+            request.finishAfterDelivery();
+        }
+        for (AWSRequest follower : AWSRequestQueue.getInstance()
+                .completeRevalidation(request.getUrl())) {
+            if (changed) {
+                Core.getInstance().getExecutorSupplier().forNetworkTasks()
+                        .submit(new InternalRunnable(follower, Priority.LOW, REFRESH_FROM_CACHE, null));
+            } else {
+                follower.finishAfterDelivery();
+            }
+        }
+    }
+
+    private boolean isChanged(Response okHttpResponse) {
+        Response networkResponse = okHttpResponse.networkResponse();
+        if (networkResponse == null || okHttpResponse.code() >= 400
+                || networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return false;
+        }
+        if (cachedValidator == null) {
+            return true;
+        }
+        return !cachedValidator.equals(networkResponse.header("ETag"))
+                && !cachedValidator.equals(networkResponse.header("Last-Modified"));
+    }
+
+    private void executeRefreshFromCache() {
+        AWSResponse response = readFromCache();
+        if (response != null) {
+            request.deliverResponse(response);
+        } else {
+            request.finishAfterDelivery();
+        }
+    }
+
+    private AWSResponse readFromCache() {
+        Response okHttpResponse = null;
+        try {
+            okHttpResponse = InternalNetworking.performSimpleRequest(request, CacheControl.FORCE_CACHE);
+            if (okHttpResponse.cacheResponse() == null || okHttpResponse.code() >= 400) {
+                return null;
+            }
+            AWSResponse response = request.parseResponse(okHttpResponse);
+            if (!response.isSuccess()) {
+                return null;
+            }
+            response.setOkHttpResponse(okHttpResponse);
+            return response;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            SourceCloseUtil.close(okHttpResponse, request);
+        }
+    }
+
     private void executeDownloadRequest() {
         Response okHttpResponse;
         try {
@@ -152,9 +359,19 @@ public class InternalRunnable implements Runnable {
         return priority;
     }
 
+    /**
+     * Only to be called while the runnable is out of the executor queue, as the queue orders
+     * by priority.
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
     private void deliverError(final AWSRequest request, final AWSError awsError) {
+        request.getTiming().markDeliveryPosted();
         Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
             public void run() {
+                request.getTiming().markDelivered();
                 request.deliverError(awsError);
                 request.finish();
             }
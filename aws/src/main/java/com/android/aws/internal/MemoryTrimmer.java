@@ -0,0 +1,220 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.aws.cache.AWSBitmapPool;
+import com.android.aws.cache.AWSCache;
+import com.android.aws.cache.AWSResponseCache;
+import com.android.aws.metrics.AWSMetrics;
+
+import okhttp3.ConnectionPool;
+
+/**
+ * Shrinks the in-memory caches when the system reports memory pressure. Moderate pressure only
+ * halves the bitmap pool; the pool is emptied and the memory caches are halved when the app is
+ * in the background or memory runs low, and everything is cleared together with idle
+ * connections when the process is about to be killed. Each callback sizes the caches for its
+ * own level, so a lower level grows them back. Full capacity returns when an activity of the
+ * app starts again or after a quiet period without callbacks.
+ */
+public class MemoryTrimmer implements ComponentCallbacks2, Application.ActivityLifecycleCallbacks {
+
+    private static final long RESTORE_DELAY_MS = 60 * 1000;
+
+    private static MemoryTrimmer sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRestoreRunnable = new Runnable() {
+        @Override
+        public void run() {
+            restore();
+        }
+    };
+    private boolean isTrimmed;
+    private int mBitmapCacheMaxSize;
+    private long mBitmapPoolMaxSize;
+    private int mResponseCacheMaxSize;
+
+    public static void register(Context context) {
+        synchronized (MemoryTrimmer.class) {
+            if (sInstance != null) {
+                return;
+            }
+            final Context appContext = context.getApplicationContext();
+            sInstance = new MemoryTrimmer(appContext);
+            appContext.registerComponentCallbacks(sInstance);
+            if (appContext instanceof Application) {
+                ((Application) appContext).registerActivityLifecycleCallbacks(sInstance);
+            }
+        }
+    }
+
+    public static void unregister() {
+        synchronized (MemoryTrimmer.class) {
+            if (sInstance == null) {
+                return;
+            }
+            final Context appContext = sInstance.mContext;
+            appContext.unregisterComponentCallbacks(sInstance);
+            if (appContext instanceof Application) {
+                ((Application) appContext).unregisterActivityLifecycleCallbacks(sInstance);
+            }
+            sInstance.restore();
+            sInstance = null;
+        }
+    }
+
+    private MemoryTrimmer(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim(0f, 0f);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            trim(0.5f, 0f);
+        } else {
+            trim(1f, 0.5f);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0f, 0f);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private synchronized void trim(float keepFraction, float poolKeepFraction) {
+        final AWSImageLoader.ImageCache imageCache = AWSImageLoader.getInstance().getImageCache();
+        final AWSCache<?, ?> bitmapCache = imageCache instanceof AWSCache ?
+                (AWSCache<?, ?>) imageCache : null;
+        final AWSBitmapPool bitmapPool = AWSBitmapPool.getInstance();
+        final AWSResponseCache responseCache = AWSResponseCache.getInstance();
+        if (!isTrimmed) {
+            isTrimmed = true;
+            mBitmapCacheMaxSize = bitmapCache != null ? bitmapCache.maxSize() : 0;
+            mBitmapPoolMaxSize = bitmapPool.maxSize();
+            mResponseCacheMaxSize = responseCache != null ? responseCache.maxSize() : 0;
+        }
+
+        mHandler.removeCallbacks(mRestoreRunnable);
+        mHandler.postDelayed(mRestoreRunnable, RESTORE_DELAY_MS);
+
+        long trimmedBitmapBytes = bitmapPool.size();
+        bitmapPool.resize((long) (mBitmapPoolMaxSize * poolKeepFraction));
+        trimmedBitmapBytes -= bitmapPool.size();
+
+        if (bitmapCache != null) {
+            final int sizeBefore = bitmapCache.size();
+            shrink(bitmapCache, mBitmapCacheMaxSize, keepFraction);
+            trimmedBitmapBytes += sizeBefore - bitmapCache.size();
+        } else if (imageCache != null && keepFraction == 0f) {
+            imageCache.evictAllBitmap();
+        }
+
+        int trimmedResponses = 0;
+        if (responseCache != null && mResponseCacheMaxSize > 0) {
+            final int sizeBefore = responseCache.size();
+            shrink(responseCache, mResponseCacheMaxSize, keepFraction);
+            trimmedResponses = sizeBefore - responseCache.size();
+        }
+
+        int evictedConnections = 0;
+        if (keepFraction == 0f) {
+            final ConnectionPool connectionPool = InternalNetworking.sHttpClient.connectionPool();
+            evictedConnections = connectionPool.idleConnectionCount();
+            connectionPool.evictAll();
+        }
+
+        AWSMetrics.getInstance().onMemoryTrimmed(trimmedBitmapBytes, trimmedResponses,
+                evictedConnections);
+    }
+
+    // Resizes the cache to the fraction of its original size, which grows it back when a
+    // callback reports less pressure than the previous one.
+    private static void shrink(AWSCache<?, ?> cache, int maxSize, float keepFraction) {
+        final int targetSize = (int) (maxSize * keepFraction);
+        if (targetSize == cache.maxSize()) {
+            return;
+        }
+        cache.resize(Math.max(1, targetSize));
+        if (targetSize == 0) {
+            cache.evictAll();
+        }
+    }
+
+    private synchronized void restore() {
+        mHandler.removeCallbacks(mRestoreRunnable);
+        if (!isTrimmed) {
+            return;
+        }
+        isTrimmed = false;
+        final AWSImageLoader.ImageCache imageCache = AWSImageLoader.getInstance().getImageCache();
+        if (imageCache instanceof AWSCache && mBitmapCacheMaxSize > 0) {
+            ((AWSCache<?, ?>) imageCache).resize(mBitmapCacheMaxSize);
+        }
+        AWSBitmapPool.getInstance().resize(mBitmapPoolMaxSize);
+        final AWSResponseCache responseCache = AWSResponseCache.getInstance();
+        if (responseCache != null && mResponseCacheMaxSize > 0) {
+            responseCache.resize(mResponseCacheMaxSize);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        restore();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
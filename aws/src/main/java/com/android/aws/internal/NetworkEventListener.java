@@ -0,0 +1,249 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import com.android.aws.cache.AWSDiskCache;
+import com.android.aws.common.AWSRequest;
+import com.android.aws.common.ConnectionClassManager;
+import com.android.aws.model.RequestTiming;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Per-call listener that measures each network response from the start of its headers to the
+ * end of its body and feeds that sample to {@link ConnectionClassManager}. Cache hits produce
+ * no network events and so never reach the bandwidth estimator. When the call carries an
+ * {@link AWSRequest} as its tag, each phase is also recorded into the request's
+ * {@link RequestTiming}. Events are forwarded to the listener the client was configured with.
+ */
+public class NetworkEventListener extends EventListener {
+
+    private static final AtomicInteger sActiveTransfers = new AtomicInteger();
+
+    private final EventListener mDelegate;
+    private final RequestTiming mTiming;
+    private long mResponseStartNanos;
+    private int mConcurrentTransfers;
+    private boolean isTransferring;
+
+    NetworkEventListener(EventListener delegate, RequestTiming timing) {
+        mDelegate = delegate;
+        mTiming = timing;
+    }
+
+    public static EventListener.Factory factory(EventListener.Factory delegate) {
+        if (delegate instanceof Factory) {
+            return delegate;
+        }
+        return new Factory(delegate);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        mDelegate.callStart(call);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mDelegate.dnsStart(call, domainName);
+        if (mTiming != null) {
+            mTiming.markDnsStart();
+        }
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        mDelegate.dnsEnd(call, domainName, inetAddressList);
+        if (mTiming != null) {
+            mTiming.markDnsEnd();
+        }
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mDelegate.connectStart(call, inetSocketAddress, proxy);
+        if (mTiming != null) {
+            mTiming.markConnectStart();
+        }
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        mDelegate.secureConnectStart(call);
+        if (mTiming != null) {
+            mTiming.markSecureConnectStart();
+        }
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        mDelegate.secureConnectEnd(call, handshake);
+        if (mTiming != null) {
+            mTiming.markSecureConnectEnd();
+        }
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                           Protocol protocol) {
+        mDelegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+        if (mTiming != null) {
+            mTiming.markConnectEnd();
+        }
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              Protocol protocol, IOException ioe) {
+        mDelegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        mDelegate.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        mDelegate.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        mDelegate.requestHeadersStart(call);
+        if (mTiming != null) {
+            mTiming.markRequestStart();
+        }
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        mDelegate.requestHeadersEnd(call, request);
+        if (mTiming != null) {
+            mTiming.markRequestEnd(-1);
+        }
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        mDelegate.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        mDelegate.requestBodyEnd(call, byteCount);
+        if (mTiming != null) {
+            mTiming.markRequestEnd(byteCount);
+        }
+    }
+
+    @Override
+    public synchronized void responseHeadersStart(Call call) {
+        mDelegate.responseHeadersStart(call);
+        if (!isTransferring) {
+            isTransferring = true;
+            mConcurrentTransfers = sActiveTransfers.incrementAndGet();
+        }
+        mResponseStartNanos = System.nanoTime();
+        if (mTiming != null) {
+            mTiming.markResponseStart();
+        }
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        mDelegate.responseHeadersEnd(call, response);
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            AWSDiskCache.onConditionalHit();
+        }
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        mDelegate.responseBodyStart(call);
+        if (mTiming != null) {
+            mTiming.markResponseBodyStart();
+        }
+    }
+
+    @Override
+    public synchronized void responseBodyEnd(Call call, long byteCount) {
+        mDelegate.responseBodyEnd(call, byteCount);
+        if (mTiming != null) {
+            mTiming.markResponseBodyEnd(byteCount);
+        }
+        if (!isTransferring) {
+            return;
+        }
+        final int concurrentTransfers = Math.max(mConcurrentTransfers, sActiveTransfers.get());
+        endTransfer();
+        final long timeTakenInMillis = (System.nanoTime() - mResponseStartNanos) / 1000000;
+        ConnectionClassManager.getInstance()
+                .updateBandwidth(byteCount, timeTakenInMillis, concurrentTransfers);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        mDelegate.callEnd(call);
+        endTransfer();
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        mDelegate.callFailed(call, ioe);
+        endTransfer();
+    }
+
+    private synchronized void endTransfer() {
+        if (isTransferring) {
+            isTransferring = false;
+            sActiveTransfers.decrementAndGet();
+        }
+    }
+
+    static final class Factory implements EventListener.Factory {
+
+        private final EventListener.Factory mDelegate;
+
+        Factory(EventListener.Factory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            EventListener delegate = mDelegate != null ? mDelegate.create(call) : null;
+            Object tag = call.request().tag();
+            RequestTiming timing = tag instanceof AWSRequest ? ((AWSRequest) tag).getTiming() : null;
+            return new NetworkEventListener(delegate != null ? delegate : EventListener.NONE, timing);
+        }
+    }
+}
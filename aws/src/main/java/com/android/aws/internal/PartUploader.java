@@ -0,0 +1,370 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import com.android.aws.common.AWSConstants;
+import com.android.aws.common.PartUploadRequest;
+import com.android.aws.core.Core;
+import com.android.aws.error.AWSError;
+import com.android.aws.interfaces.PartUploadListener;
+import com.android.aws.interfaces.UploadProgressListener;
+import com.android.aws.utils.Utils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+public class PartUploader {
+
+    private static final Pattern UPLOAD_ID_PATTERN =
+            Pattern.compile("<UploadId>\\s*([^<\\s]+)\\s*</UploadId>");
+    private static final MediaType XML_MEDIA_TYPE =
+            MediaType.parse("application/xml; charset=utf-8");
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    private final PartUploadRequest mRequest;
+    private final PartUploadListener mListener;
+    private final OkHttpClient mClient;
+    private final int mPartCount;
+    private final long mTotalBytes;
+    private final AtomicReferenceArray<String> mETags;
+    private final AtomicInteger mNextPart = new AtomicInteger(1);
+    private final AtomicInteger mCompletedParts = new AtomicInteger();
+    private final AtomicLong mUploadedBytes = new AtomicLong();
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+    private final Set<Call> mCalls =
+            Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+    private final UploadProgressHandler mProgressHandler;
+    private final Executor mExecutor;
+    private final long mRetryBackoffMs;
+    private volatile String mUploadId;
+    private volatile boolean isCancelled;
+
+    public PartUploader(PartUploadRequest request, PartUploadListener listener) {
+        this(request, listener, Core.getInstance().getExecutorSupplier().forUploadPartTasks(),
+                RETRY_BACKOFF_MS);
+    }
+
+    PartUploader(PartUploadRequest request, PartUploadListener listener, Executor executor,
+                 long retryBackoffMs) {
+        mRequest = request;
+        mExecutor = executor;
+        mRetryBackoffMs = retryBackoffMs;
+        mListener = listener;
+        mClient = request.getOkHttpClient() != null ? request.getOkHttpClient()
+                : InternalNetworking.getClient();
+        mPartCount = request.getPartCount();
+        mTotalBytes = request.getFile().length();
+        mETags = new AtomicReferenceArray<>(mPartCount + 1);
+        mProgressHandler = request.getUploadProgressListener() != null ?
+                new UploadProgressHandler(request.getUploadProgressListener()) : null;
+    }
+
+    public void start() {
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                initiate();
+            }
+        });
+    }
+
+    public void cancel() {
+        isCancelled = true;
+        for (Call call : mCalls) {
+            call.cancel();
+        }
+        AWSError awsError = new AWSError();
+        awsError.setCancellationMessageInError();
+        fail(awsError);
+    }
+
+    public boolean isCanceled() {
+        return isCancelled;
+    }
+
+    private void initiate() {
+        Response response = null;
+        try {
+            HttpUrl url = HttpUrl.parse(mRequest.getUrl()).newBuilder()
+                    .addQueryParameter("uploads", null)
+                    .build();
+            response = execute(newRequest(url)
+                    .post(RequestBody.create(null, new byte[0]))
+                    .build());
+            if (response.code() >= 400) {
+                fail(getErrorForServerResponse(response));
+                return;
+            }
+            Matcher matcher = UPLOAD_ID_PATTERN.matcher(response.body().string());
+            if (!matcher.find()) {
+                fail(Utils.getErrorForParse(new AWSError(response)));
+                return;
+            }
+            mUploadId = matcher.group(1);
+        } catch (IOException e) {
+            fail(Utils.getErrorForConnection(new AWSError(e)));
+            return;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+        int parallel = Math.min(mRequest.getConcurrency(), mPartCount);
+        for (int i = 0; i < parallel; i++) {
+            scheduleNextPart();
+        }
+    }
+
+    private void scheduleNextPart() {
+        final int partNumber = mNextPart.getAndIncrement();
+        if (partNumber > mPartCount || mFinished.get()) {
+            return;
+        }
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                uploadPart(partNumber);
+            }
+        });
+    }
+
+    private void uploadPart(int partNumber) {
+        final long offset = (partNumber - 1) * mRequest.getPartSize();
+        final long length = Math.min(mRequest.getPartSize(), mTotalBytes - offset);
+        HttpUrl url = HttpUrl.parse(mRequest.getUrl()).newBuilder()
+                .addQueryParameter("partNumber", String.valueOf(partNumber))
+                .addQueryParameter("uploadId", mUploadId)
+                .build();
+        AWSError lastError = null;
+        for (int attempt = 0; attempt <= mRequest.getMaxRetries() && !mFinished.get(); attempt++) {
+            if (attempt > 0 && !sleepBeforeRetry(attempt)) {
+                return;
+            }
+            final long[] written = new long[1];
+            Response response = null;
+            try {
+                RequestBody body = new FilePartRequestBody(mRequest.getContentType(),
+                        mRequest.getFile(), offset, Math.max(0, length),
+                        new UploadProgressListener() {
+                            @Override
+                            public void onProgress(long bytesUploaded, long totalBytes) {
+                                publishProgress(bytesUploaded - written[0]);
+                                written[0] = bytesUploaded;
+                            }
+                        });
+                response = execute(newRequest(url).put(body).build());
+                String eTag = response.header("ETag");
+                if (response.isSuccessful() && eTag != null) {
+                    written[0] = 0;
+                    mETags.set(partNumber, eTag);
+                    onPartComplete();
+                    return;
+                }
+                lastError = getErrorForServerResponse(response);
+                if (response.code() < 500) {
+                    // Client errors and a missing ETag will not be fixed by sending the part again.
+                    break;
+                }
+            } catch (IOException e) {
+                lastError = Utils.getErrorForConnection(new AWSError(e));
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+                if (written[0] != 0) {
+                    publishProgress(-written[0]);
+                }
+            }
+        }
+        fail(lastError != null ? lastError : Utils.getErrorForConnection(new AWSError()));
+    }
+
+    private AWSError getErrorForServerResponse(Response response) {
+        String body = null;
+        try {
+            body = response.body().string();
+        } catch (IOException ignore) {
+
+        }
+        return getErrorForServerResponse(response, body);
+    }
+
+    private AWSError getErrorForServerResponse(Response response, String body) {
+        AWSError awsError = new AWSError(response);
+        awsError.setErrorBody(body);
+        awsError.setErrorCode(response.code());
+        awsError.setErrorDetail(AWSConstants.RESPONSE_FROM_SERVER_ERROR);
+        return awsError;
+    }
+
+    private boolean sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(mRetryBackoffMs << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void onPartComplete() {
+        if (mCompletedParts.incrementAndGet() == mPartCount) {
+            complete();
+        } else {
+            scheduleNextPart();
+        }
+    }
+
+    private void complete() {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 1; i <= mPartCount; i++) {
+            xml.append("<Part><PartNumber>").append(i).append("</PartNumber><ETag>")
+                    .append(mETags.get(i)).append("</ETag></Part>");
+        }
+        xml.append("</CompleteMultipartUpload>");
+        HttpUrl url = HttpUrl.parse(mRequest.getUrl()).newBuilder()
+                .addQueryParameter("uploadId", mUploadId)
+                .build();
+        Response response = null;
+        try {
+            response = execute(newRequest(url)
+                    .post(RequestBody.create(XML_MEDIA_TYPE, xml.toString()))
+                    .build());
+            String body = response.body().string();
+            // S3 can report a failed completion with a 200 status and an <Error> body.
+            if (!response.isSuccessful() || body.contains("<Error>")) {
+                fail(getErrorForServerResponse(response, body));
+                return;
+            }
+            succeed(body);
+        } catch (IOException e) {
+            fail(Utils.getErrorForConnection(new AWSError(e)));
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private void abort() {
+        if (mUploadId == null) {
+            return;
+        }
+        HttpUrl url = HttpUrl.parse(mRequest.getUrl()).newBuilder()
+                .addQueryParameter("uploadId", mUploadId)
+                .build();
+        final Request request = newRequest(url).delete().build();
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mClient.newCall(request).execute().close();
+                } catch (IOException ignore) {
+
+                }
+            }
+        });
+    }
+
+    private Request.Builder newRequest(HttpUrl url) {
+        return new Request.Builder()
+                .url(url)
+                .headers(mRequest.getHeaders())
+                .tag(mRequest.getTag());
+    }
+
+    private Response execute(Request request) throws IOException {
+        if (mFinished.get()) {
+            throw new IOException("Upload finished");
+        }
+        Call call = mClient.newCall(request);
+        mCalls.add(call);
+        try {
+            return call.execute();
+        } finally {
+            mCalls.remove(call);
+        }
+    }
+
+    private void publishProgress(long delta) {
+        long uploaded = mUploadedBytes.addAndGet(delta);
+        if (mProgressHandler != null && !mFinished.get()) {
+            mProgressHandler.updateProgress(uploaded, mTotalBytes, false);
+        }
+    }
+
+    private void succeed(final String body) {
+        if (!mFinished.compareAndSet(false, true)) {
+            return;
+        }
+        deliveryExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onUploadComplete(body);
+                }
+            }
+        });
+    }
+
+    private void fail(final AWSError awsError) {
+        if (!mFinished.compareAndSet(false, true)) {
+            return;
+        }
+        for (Call call : mCalls) {
+            call.cancel();
+        }
+        abort();
+        deliveryExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onError(awsError);
+                }
+            }
+        });
+    }
+
+    private Executor executor() {
+        return mExecutor;
+    }
+
+    private Executor deliveryExecutor() {
+        if (mRequest.getExecutor() != null) {
+            return mRequest.getExecutor();
+        }
+        return Core.getInstance().getExecutorSupplier().forMainThreadTasks();
+    }
+}
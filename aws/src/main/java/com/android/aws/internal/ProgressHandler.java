@@ -0,0 +1,101 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+import com.android.aws.common.AWSConstants;
+import com.android.aws.model.Progress;
+
+/**
+ * Coalesces progress updates from a transfer thread into at most one pending main-thread
+ * message. Updates are dropped until both the byte delta and the interval thresholds have
+ * passed; the final update is always delivered.
+ */
+public abstract class ProgressHandler extends Handler {
+
+    private static volatile long sMinBytesDelta = AWSConstants.DEFAULT_PROGRESS_MIN_BYTES;
+    private static volatile long sMinIntervalMs = AWSConstants.DEFAULT_PROGRESS_MIN_INTERVAL_MS;
+
+    private final Progress mProgress = new Progress(0, 0);
+    private long mLastReportedBytes;
+    private long mLastReportedTime;
+    private boolean isPending;
+    private boolean isFinished;
+
+    protected ProgressHandler() {
+        super(Looper.getMainLooper());
+    }
+
+    public static void setUpdateThreshold(long minBytesDelta, long minIntervalMs) {
+        sMinBytesDelta = Math.max(0, minBytesDelta);
+        sMinIntervalMs = Math.max(0, minIntervalMs);
+    }
+
+    public void updateProgress(long currentBytes, long totalBytes, boolean isFinal) {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mProgress) {
+            if (isFinished) {
+                if (currentBytes >= mLastReportedBytes) {
+                    return;
+                }
+                // A retried transfer starts over from the beginning.
+                isFinished = false;
+            }
+            mProgress.currentBytes = currentBytes;
+            mProgress.totalBytes = totalBytes;
+            isFinal = isFinal || (totalBytes > 0 && currentBytes >= totalBytes);
+            if (!isFinal && (Math.abs(currentBytes - mLastReportedBytes) < sMinBytesDelta
+                    || now - mLastReportedTime < sMinIntervalMs)) {
+                return;
+            }
+            mLastReportedBytes = currentBytes;
+            mLastReportedTime = now;
+            isFinished = isFinal;
+            if (isPending) {
+                return;
+            }
+            isPending = true;
+        }
+        sendEmptyMessage(AWSConstants.UPDATE);
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        switch (msg.what) {
+            case AWSConstants.UPDATE:
+                final long currentBytes;
+                final long totalBytes;
+                synchronized (mProgress) {
+                    isPending = false;
+                    currentBytes = mProgress.currentBytes;
+                    totalBytes = mProgress.totalBytes;
+                }
+                onProgress(currentBytes, totalBytes);
+                break;
+            default:
+                super.handleMessage(msg);
+                break;
+        }
+    }
+
+    protected abstract void onProgress(long currentBytes, long totalBytes);
+}
@@ -17,9 +17,7 @@
 
 package com.android.aws.internal;
 
-import com.android.aws.common.AWSConstants;
 import com.android.aws.interfaces.UploadProgressListener;
-import com.android.aws.model.Progress;
 
 import java.io.IOException;
 
@@ -33,7 +31,6 @@ import okio.Sink;
 
 public class RequestProgressBody extends RequestBody {
     private final RequestBody requestBody;
-    private BufferedSink bufferedSink;
     private UploadProgressHandler uploadProgressHandler;
 
     public RequestProgressBody(RequestBody requestBody, UploadProgressListener uploadProgressListener) {
@@ -54,30 +51,33 @@ public class RequestProgressBody extends RequestBody {
 
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
-        if (bufferedSink == null) {
-            bufferedSink = Okio.buffer(sink(sink));
-        }
+        // A fresh sink per call, so a retried request writes to its new connection.
+        ProgressSink progressSink = new ProgressSink(sink, contentLength());
+        BufferedSink bufferedSink = Okio.buffer(progressSink);
         requestBody.writeTo(bufferedSink);
         bufferedSink.flush();
+        if (uploadProgressHandler != null) {
+            uploadProgressHandler.updateProgress(progressSink.bytesWritten,
+                    progressSink.contentLength, true);
+        }
     }
 
-    private Sink sink(Sink sink) {
-        return new ForwardingSink(sink) {
-            long bytesWritten = 0L;
-            long contentLength = 0L;
+    private final class ProgressSink extends ForwardingSink {
+        private final long contentLength;
+        private long bytesWritten = 0L;
 
-            @Override
-            public void write(Buffer source, long byteCount) throws IOException {
-                super.write(source, byteCount);
-                if (contentLength == 0) {
-                    contentLength = contentLength();
-                }
-                bytesWritten += byteCount;
-                if (uploadProgressHandler != null) {
-                    uploadProgressHandler.obtainMessage(AWSConstants.UPDATE,
-                            new Progress(bytesWritten, contentLength)).sendToTarget();
-                }
+        ProgressSink(Sink delegate, long contentLength) {
+            super(delegate);
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+            if (uploadProgressHandler != null) {
+                uploadProgressHandler.updateProgress(bytesWritten, contentLength, false);
             }
-        };
+        }
     }
 }
\ No newline at end of file
@@ -17,9 +17,7 @@
 
 package com.android.aws.internal;
 
-import com.android.aws.common.AWSConstants;
 import com.android.aws.interfaces.DownloadProgressListener;
-import com.android.aws.model.Progress;
 
 import java.io.IOException;
 
@@ -73,10 +71,8 @@ public class ResponseProgressBody extends ResponseBody {
                 long bytesRead = super.read(sink, byteCount);
                 totalBytesRead += ((bytesRead != -1) ? bytesRead : 0);
                 if (downloadProgressHandler != null) {
-                    downloadProgressHandler
-                            .obtainMessage(AWSConstants.UPDATE,
-                                    new Progress(totalBytesRead, mResponseBody.contentLength()))
-                            .sendToTarget();
+                    downloadProgressHandler.updateProgress(totalBytesRead,
+                            mResponseBody.contentLength(), bytesRead == -1);
                 }
                 return bytesRead;
             }
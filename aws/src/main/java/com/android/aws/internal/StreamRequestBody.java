@@ -0,0 +1,237 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.internal;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import com.android.aws.interfaces.InputStreamSupplier;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.Util;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * A request body that streams from an {@link InputStreamSupplier} instead of a file on disk.
+ * A negative content length is sent with chunked transfer encoding. Bodies created from a
+ * content Uri query its type, length and name on first use, which is on the network thread.
+ */
+public class StreamRequestBody extends RequestBody {
+
+    private final InputStreamSupplier mSupplier;
+    private MediaType mContentType;
+    private long mContentLength;
+    private String mFileName;
+    // Guarded by this, cleared once the Uri was queried.
+    private ContentResolver mResolver;
+    private Uri mUri;
+    private boolean isContentTypeResolved;
+
+    public StreamRequestBody(MediaType contentType, InputStreamSupplier supplier,
+                             long contentLength, String fileName) {
+        if (supplier == null) {
+            throw new NullPointerException("supplier == null");
+        }
+        mContentType = contentType;
+        mSupplier = supplier;
+        mContentLength = contentLength < 0 ? -1 : contentLength;
+        mFileName = fileName;
+    }
+
+    private StreamRequestBody(MediaType contentType, boolean isContentTypeResolved,
+                              InputStreamSupplier supplier, ContentResolver resolver, Uri uri) {
+        this(contentType, supplier, -1, null);
+        this.isContentTypeResolved = isContentTypeResolved;
+        mResolver = resolver;
+        mUri = uri;
+    }
+
+    /**
+     * Creates a body that can be written once, even when its length is known. A retry or a
+     * redirect that resends the body fails. Use the {@link InputStreamSupplier}, Uri or file
+     * descriptor variants for bodies that have to be replayable.
+     */
+    public static StreamRequestBody fromInputStream(MediaType contentType,
+                                                    final InputStream inputStream,
+                                                    long contentLength, String fileName) {
+        return new StreamRequestBody(contentType, new InputStreamSupplier() {
+            private boolean isOpened;
+
+            @Override
+            public synchronized InputStream open() throws IOException {
+                if (isOpened) {
+                    throw new IOException("InputStream body cannot be replayed, use an"
+                            + " InputStreamSupplier, Uri or file descriptor body instead");
+                }
+                isOpened = true;
+                return inputStream;
+            }
+        }, contentLength, fileName);
+    }
+
+    public static StreamRequestBody fromFileDescriptor(MediaType contentType,
+                                                       final ParcelFileDescriptor fileDescriptor,
+                                                       String fileName) {
+        final long statSize = fileDescriptor.getStatSize();
+        return new StreamRequestBody(contentType, new InputStreamSupplier() {
+            @Override
+            public InputStream open() throws IOException {
+                // The stream does not own the descriptor, so closing it leaves the caller's
+                // descriptor open and a seekable file can be rewound for the next attempt.
+                FileInputStream stream = new FileInputStream(fileDescriptor.getFileDescriptor());
+                if (statSize >= 0) {
+                    stream.getChannel().position(0);
+                }
+                return stream;
+            }
+        }, statSize, fileName);
+    }
+
+    public static StreamRequestBody fromUri(Context context, Uri uri) {
+        return fromUri(context, uri, null);
+    }
+
+    /**
+     * @param defaultContentType The type sent when the resolver does not know the Uri's type
+     */
+    public static StreamRequestBody fromUri(Context context, final Uri uri,
+                                            MediaType defaultContentType) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        return new StreamRequestBody(defaultContentType, false, new InputStreamSupplier() {
+            @Override
+            public InputStream open() throws IOException {
+                InputStream stream = resolver.openInputStream(uri);
+                if (stream == null) {
+                    throw new IOException("Unable to open " + uri);
+                }
+                return stream;
+            }
+        }, resolver, uri);
+    }
+
+    public synchronized StreamRequestBody withContentType(MediaType contentType) {
+        if (mResolver != null) {
+            return new StreamRequestBody(contentType, true, mSupplier, mResolver, mUri);
+        }
+        return new StreamRequestBody(contentType, mSupplier, mContentLength, mFileName);
+    }
+
+    public String getFileName() {
+        resolve();
+        return mFileName;
+    }
+
+    @Override
+    public MediaType contentType() {
+        resolve();
+        return mContentType;
+    }
+
+    @Override
+    public long contentLength() {
+        resolve();
+        return mContentLength;
+    }
+
+    private synchronized void resolve() {
+        if (mResolver == null) {
+            return;
+        }
+        if (!isContentTypeResolved) {
+            String type = mResolver.getType(mUri);
+            if (type != null) {
+                mContentType = MediaType.parse(type);
+            }
+        }
+        mContentLength = queryLength(mResolver, mUri);
+        mFileName = queryFileName(mResolver, mUri);
+        mResolver = null;
+        mUri = null;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        final long contentLength = contentLength();
+        Source source = null;
+        try {
+            source = Okio.source(mSupplier.open());
+            long written = sink.writeAll(source);
+            if (contentLength != -1 && written != contentLength) {
+                throw new ProtocolException("expected " + contentLength
+                        + " bytes but stream supplied " + written);
+            }
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    private static long queryLength(ContentResolver resolver, Uri uri) {
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = resolver.openAssetFileDescriptor(uri, "r");
+            if (descriptor != null) {
+                return descriptor.getLength();
+            }
+        } catch (Exception ignore) {
+
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignore) {
+
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String queryFileName(ContentResolver resolver, Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, new String[]{OpenableColumns.DISPLAY_NAME},
+                    null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                String name = cursor.getString(0);
+                if (name != null) {
+                    return name;
+                }
+            }
+        } catch (Exception ignore) {
+
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return uri.getLastPathSegment();
+    }
+}
@@ -41,15 +41,30 @@ public final class SynchronousCall {
     }
 
     public static <T> AWSResponse<T> execute(AWSRequest request) {
-        switch (request.getRequestType()) {
-            case SIMPLE:
-                return executeSimpleRequest(request);
-            case DOWNLOAD:
-                return executeDownloadRequest(request);
-            case MULTIPART:
-                return executeUploadRequest(request);
+        request.getTiming().markStarted();
+        AWSResponse<T> response = null;
+        try {
+            switch (request.getRequestType()) {
+                case SIMPLE:
+                    response = executeSimpleRequest(request);
+                    break;
+                case DOWNLOAD:
+                    response = executeDownloadRequest(request);
+                    break;
+                case MULTIPART:
+                    response = executeUploadRequest(request);
+                    break;
+                default:
+                    response = new AWSResponse<>(new AWSError());
+                    break;
+            }
+            return response;
+        } finally {
+            if (response == null || !response.isSuccess()) {
+                request.setFailed(true);
+            }
+            request.sendDetailedAnalytics();
         }
-        return new AWSResponse<>(new AWSError());
     }
 
     private static <T> AWSResponse<T> executeSimpleRequest(AWSRequest request) {
@@ -63,6 +78,7 @@ public final class SynchronousCall {
             if (request.getResponseAs() == ResponseType.OK_HTTP_RESPONSE) {
                 AWSResponse response = new AWSResponse(okHttpResponse);
                 response.setOkHttpResponse(okHttpResponse);
+                response.setStale(request.isStale());
                 return response;
             }
             if (okHttpResponse.code() >= 400) {
@@ -73,6 +89,7 @@ public final class SynchronousCall {
             }
             AWSResponse response = request.parseResponse(okHttpResponse);
             response.setOkHttpResponse(okHttpResponse);
+            response.setStale(request.isStale());
             return response;
         } catch (AWSError se) {
             return new AWSResponse<>(Utils.getErrorForConnection(new AWSError(se)));
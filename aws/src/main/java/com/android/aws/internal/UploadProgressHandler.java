@@ -17,35 +17,20 @@
 
 package com.android.aws.internal;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-
-import com.android.aws.common.AWSConstants;
 import com.android.aws.interfaces.UploadProgressListener;
-import com.android.aws.model.Progress;
 
-public class UploadProgressHandler extends Handler {
+public class UploadProgressHandler extends ProgressHandler {
 
     private final UploadProgressListener mUploadProgressListener;
 
     public UploadProgressHandler(UploadProgressListener uploadProgressListener) {
-        super(Looper.getMainLooper());
         mUploadProgressListener = uploadProgressListener;
     }
 
     @Override
-    public void handleMessage(Message msg) {
-        switch (msg.what) {
-            case AWSConstants.UPDATE:
-                if (mUploadProgressListener != null) {
-                    final Progress progress = (Progress) msg.obj;
-                    mUploadProgressListener.onProgress(progress.currentBytes, progress.totalBytes);
-                }
-                break;
-            default:
-                super.handleMessage(msg);
-                break;
+    protected void onProgress(long currentBytes, long totalBytes) {
+        if (mUploadProgressListener != null) {
+            mUploadProgressListener.onProgress(currentBytes, totalBytes);
         }
     }
 }
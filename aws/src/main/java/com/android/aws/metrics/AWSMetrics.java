@@ -0,0 +1,210 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.metrics;
+
+import com.android.aws.cache.AWSCache;
+import com.android.aws.common.AWSRequest;
+import com.android.aws.common.CacheTier;
+import com.android.aws.core.Core;
+import com.android.aws.core.ExecutorSupplier;
+import com.android.aws.model.RequestTiming;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Process-wide aggregate of request metrics. Disabled by default; once enabled every finished
+ * request records its total latency into histograms keyed by host, priority, request type and
+ * response type, without posting anything to the main thread.
+ */
+public class AWSMetrics {
+
+    public static final String LATENCY = "latency";
+    public static final String QUEUE_WAIT = "queueWait";
+    public static final String TIME_TO_FIRST_BYTE = "timeToFirstByte";
+    public static final String DECODE = "decode";
+    public static final String DECODE_QUEUE_WAIT = "decodeQueueWait";
+    public static final String HOST = "host:";
+    public static final String PRIORITY = "priority:";
+    public static final String REQUEST_TYPE = "requestType:";
+    public static final String RESPONSE_TYPE = "responseType:";
+
+    private static volatile AWSMetrics sInstance = null;
+
+    private volatile boolean isEnabled;
+    private final ConcurrentMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AWSCache<?, ?>> mCaches = new ConcurrentHashMap<>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mCacheResponseCount = new AtomicLong();
+    private final AtomicLong mMemoryCacheResponseCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mMemoryTrimCount = new AtomicLong();
+    private final AtomicLong mTrimmedBitmapBytes = new AtomicLong();
+    private final AtomicLong mTrimmedResponseCount = new AtomicLong();
+    private final AtomicLong mEvictedConnectionCount = new AtomicLong();
+
+    public static AWSMetrics getInstance() {
+        if (sInstance == null) {
+            synchronized (AWSMetrics.class) {
+                if (sInstance == null) {
+                    sInstance = new AWSMetrics();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        isEnabled = enabled;
+    }
+
+    public void registerCache(String name, AWSCache<?, ?> cache) {
+        if (name != null && cache != null) {
+            mCaches.put(name, cache);
+        }
+    }
+
+    public void onRequestQueued() {
+        if (!isEnabled) {
+            return;
+        }
+        final int depth = getQueueDepth();
+        int max;
+        while (depth > (max = mMaxQueueDepth.get())) {
+            if (mMaxQueueDepth.compareAndSet(max, depth)) {
+                break;
+            }
+        }
+    }
+
+    public void onMemoryTrimmed(long bitmapBytes, int responses, int connections) {
+        if (!isEnabled) {
+            return;
+        }
+        mMemoryTrimCount.incrementAndGet();
+        mTrimmedBitmapBytes.addAndGet(bitmapBytes);
+        mTrimmedResponseCount.addAndGet(responses);
+        mEvictedConnectionCount.addAndGet(connections);
+    }
+
+    public void record(AWSRequest request, RequestTiming timing, boolean failed) {
+        if (!isEnabled) {
+            return;
+        }
+        mRequestCount.incrementAndGet();
+        if (failed) {
+            mErrorCount.incrementAndGet();
+        }
+        if (timing.isFromCache()) {
+            mCacheResponseCount.incrementAndGet();
+        }
+        if (timing.getCacheTier() == CacheTier.MEMORY) {
+            mMemoryCacheResponseCount.incrementAndGet();
+        }
+        if (timing.getBytesSent() > 0) {
+            mBytesSent.addAndGet(timing.getBytesSent());
+        }
+        if (timing.getBytesReceived() > 0) {
+            mBytesReceived.addAndGet(timing.getBytesReceived());
+        }
+        histogram(QUEUE_WAIT).record(timing.getQueueWaitMillis());
+        histogram(TIME_TO_FIRST_BYTE).record(timing.getTimeToFirstByteMillis());
+        histogram(DECODE_QUEUE_WAIT).record(timing.getDecodeQueueWaitMillis());
+        histogram(DECODE).record(timing.getDecodeMillis());
+
+        final long latency = timing.getTotalMillis();
+        histogram(LATENCY).record(latency);
+        histogram(PRIORITY + request.getPriority()).record(latency);
+        histogram(REQUEST_TYPE + request.getRequestType()).record(latency);
+        if (request.getResponseAs() != null) {
+            histogram(RESPONSE_TYPE + request.getResponseAs()).record(latency);
+        }
+        HttpUrl url = HttpUrl.parse(request.getUrl());
+        if (url != null) {
+            histogram(HOST + url.host()).record(latency);
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, HistogramSnapshot> histograms = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, Float> cacheHitRatios = new HashMap<>();
+        for (Map.Entry<String, AWSCache<?, ?>> entry : mCaches.entrySet()) {
+            AWSCache<?, ?> cache = entry.getValue();
+            int hits = cache.hitCount();
+            int accesses = hits + cache.missCount();
+            cacheHitRatios.put(entry.getKey(), accesses == 0 ? 0f : (float) hits / accesses);
+        }
+        return new MetricsSnapshot(histograms, cacheHitRatios, mRequestCount.get(),
+                mErrorCount.get(), mCacheResponseCount.get(), mMemoryCacheResponseCount.get(),
+                mBytesSent.get(),
+                mBytesReceived.get(), getQueueDepth(), mMaxQueueDepth.get(),
+                mMemoryTrimCount.get(), mTrimmedBitmapBytes.get(), mTrimmedResponseCount.get(),
+                mEvictedConnectionCount.get());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms.values()) {
+            histogram.reset();
+        }
+        mRequestCount.set(0);
+        mErrorCount.set(0);
+        mCacheResponseCount.set(0);
+        mMemoryCacheResponseCount.set(0);
+        mBytesSent.set(0);
+        mBytesReceived.set(0);
+        mMaxQueueDepth.set(0);
+        mMemoryTrimCount.set(0);
+        mTrimmedBitmapBytes.set(0);
+        mTrimmedResponseCount.set(0);
+        mEvictedConnectionCount.set(0);
+    }
+
+    private static int getQueueDepth() {
+        ExecutorSupplier executorSupplier = Core.getInstance().getExecutorSupplier();
+        return executorSupplier.forNetworkTasks().getQueue().size()
+                + executorSupplier.forImmediateNetworkTasks().getQueue().size();
+    }
+
+    private LatencyHistogram histogram(String key) {
+        LatencyHistogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = mHistograms.putIfAbsent(key, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class HistogramSnapshot {
+
+    private final long[] mBuckets;
+    private final long mCount;
+    private final long mSum;
+    private final long mMax;
+
+    HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+        mBuckets = buckets;
+        mCount = count;
+        mSum = sum;
+        mMax = max;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, capped at the
+     * largest recorded value.
+     */
+    public long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100d * mCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < mBuckets.length; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP95() {
+        return getPercentile(95);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("count", mCount);
+        jsonObject.put("mean", getMean());
+        jsonObject.put("max", mMax);
+        jsonObject.put("p50", getP50());
+        jsonObject.put("p95", getP95());
+        jsonObject.put("p99", getP99());
+        return jsonObject;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{" +
+                "count=" + mCount +
+                ", mean=" + getMean() +
+                ", p50=" + getP50() +
+                ", p95=" + getP95() +
+                ", p99=" + getP99() +
+                ", max=" + mMax +
+                '}';
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class MetricsSnapshot {
+
+    private final Map<String, HistogramSnapshot> mHistograms;
+    private final Map<String, Float> mCacheHitRatios;
+    private final long mRequestCount;
+    private final long mErrorCount;
+    private final long mCacheResponseCount;
+    private final long mMemoryCacheResponseCount;
+    private final long mBytesSent;
+    private final long mBytesReceived;
+    private final int mQueueDepth;
+    private final int mMaxQueueDepth;
+    private final long mMemoryTrimCount;
+    private final long mTrimmedBitmapBytes;
+    private final long mTrimmedResponseCount;
+    private final long mEvictedConnectionCount;
+
+    MetricsSnapshot(Map<String, HistogramSnapshot> histograms, Map<String, Float> cacheHitRatios,
+                    long requestCount, long errorCount, long cacheResponseCount,
+                    long memoryCacheResponseCount, long bytesSent, long bytesReceived,
+                    int queueDepth, int maxQueueDepth, long memoryTrimCount,
+                    long trimmedBitmapBytes, long trimmedResponseCount,
+                    long evictedConnectionCount) {
+        mHistograms = Collections.unmodifiableMap(histograms);
+        mCacheHitRatios = Collections.unmodifiableMap(cacheHitRatios);
+        mRequestCount = requestCount;
+        mErrorCount = errorCount;
+        mCacheResponseCount = cacheResponseCount;
+        mMemoryCacheResponseCount = memoryCacheResponseCount;
+        mBytesSent = bytesSent;
+        mBytesReceived = bytesReceived;
+        mQueueDepth = queueDepth;
+        mMaxQueueDepth = maxQueueDepth;
+        mMemoryTrimCount = memoryTrimCount;
+        mTrimmedBitmapBytes = trimmedBitmapBytes;
+        mTrimmedResponseCount = trimmedResponseCount;
+        mEvictedConnectionCount = evictedConnectionCount;
+    }
+
+    /**
+     * Histograms are keyed by {@link AWSMetrics#LATENCY}, {@link AWSMetrics#QUEUE_WAIT},
+     * {@link AWSMetrics#TIME_TO_FIRST_BYTE} or a dimension prefix followed by its value,
+     * e.g. "host:api.example.com" or "priority:HIGH".
+     */
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return mHistograms;
+    }
+
+    public HistogramSnapshot getHistogram(String key) {
+        return mHistograms.get(key);
+    }
+
+    public Map<String, Float> getCacheHitRatios() {
+        return mCacheHitRatios;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount;
+    }
+
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    public long getCacheResponseCount() {
+        return mCacheResponseCount;
+    }
+
+    public long getMemoryCacheResponseCount() {
+        return mMemoryCacheResponseCount;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public long getMemoryTrimCount() {
+        return mMemoryTrimCount;
+    }
+
+    public long getTrimmedBitmapBytes() {
+        return mTrimmedBitmapBytes;
+    }
+
+    public long getTrimmedResponseCount() {
+        return mTrimmedResponseCount;
+    }
+
+    public long getEvictedConnectionCount() {
+        return mEvictedConnectionCount;
+    }
+
+    public JSONObject toJSONObject() throws JSONException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("requestCount", mRequestCount);
+        jsonObject.put("errorCount", mErrorCount);
+        jsonObject.put("cacheResponseCount", mCacheResponseCount);
+        jsonObject.put("memoryCacheResponseCount", mMemoryCacheResponseCount);
+        jsonObject.put("bytesSent", mBytesSent);
+        jsonObject.put("bytesReceived", mBytesReceived);
+        jsonObject.put("queueDepth", mQueueDepth);
+        jsonObject.put("maxQueueDepth", mMaxQueueDepth);
+        jsonObject.put("memoryTrimCount", mMemoryTrimCount);
+        jsonObject.put("trimmedBitmapBytes", mTrimmedBitmapBytes);
+        jsonObject.put("trimmedResponseCount", mTrimmedResponseCount);
+        jsonObject.put("evictedConnectionCount", mEvictedConnectionCount);
+        JSONObject caches = new JSONObject();
+        for (Map.Entry<String, Float> entry : mCacheHitRatios.entrySet()) {
+            caches.put(entry.getKey(), entry.getValue().doubleValue());
+        }
+        jsonObject.put("cacheHitRatios", caches);
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, HistogramSnapshot> entry : mHistograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().toJSONObject());
+        }
+        jsonObject.put("histograms", histograms);
+        return jsonObject;
+    }
+}
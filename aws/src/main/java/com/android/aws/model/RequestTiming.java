@@ -0,0 +1,240 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.model;
+
+import com.android.aws.common.CacheTier;
+
+/**
+ * Timing breakdown of a single request. Each phase is reported in milliseconds, or -1 when the
+ * phase did not happen (e.g. DNS and connect on a reused connection, or everything network
+ * related on a cache hit). The body is usually consumed while it is parsed, so body read and
+ * parse time overlap.
+ */
+public class RequestTiming {
+
+    private long mEnqueuedAt;
+    private long mStartedAt;
+    private long mDnsStart;
+    private long mDnsEnd;
+    private long mConnectStart;
+    private long mConnectEnd;
+    private long mSecureConnectStart;
+    private long mSecureConnectEnd;
+    private long mRequestStart;
+    private long mRequestEnd;
+    private long mResponseStart;
+    private long mResponseBodyStart;
+    private long mResponseBodyEnd;
+    private long mParseNanos = -1;
+    private long mDecodeEnqueuedAt;
+    private long mDecodeStartedAt;
+    private long mDecodeEndAt;
+    private long mDeliveryPostedAt;
+    private long mDeliveredAt;
+    private long mBytesSent = -1;
+    private long mBytesReceived = -1;
+    private CacheTier mCacheTier = CacheTier.NETWORK;
+
+    public void markEnqueued() {
+        mEnqueuedAt = System.nanoTime();
+    }
+
+    public void markStarted() {
+        mStartedAt = System.nanoTime();
+    }
+
+    public void markDnsStart() {
+        mDnsStart = System.nanoTime();
+    }
+
+    public void markDnsEnd() {
+        mDnsEnd = System.nanoTime();
+    }
+
+    public void markConnectStart() {
+        mConnectStart = System.nanoTime();
+    }
+
+    public void markConnectEnd() {
+        mConnectEnd = System.nanoTime();
+    }
+
+    public void markSecureConnectStart() {
+        mSecureConnectStart = System.nanoTime();
+    }
+
+    public void markSecureConnectEnd() {
+        mSecureConnectEnd = System.nanoTime();
+    }
+
+    public void markRequestStart() {
+        mRequestStart = System.nanoTime();
+    }
+
+    public void markRequestEnd(long bytesSent) {
+        mRequestEnd = System.nanoTime();
+        if (bytesSent >= 0) {
+            mBytesSent = bytesSent;
+        }
+    }
+
+    public void markResponseStart() {
+        mResponseStart = System.nanoTime();
+    }
+
+    public void markResponseBodyStart() {
+        mResponseBodyStart = System.nanoTime();
+    }
+
+    public void markResponseBodyEnd(long bytesReceived) {
+        mResponseBodyEnd = System.nanoTime();
+        mBytesReceived = bytesReceived;
+    }
+
+    public void addParseTime(long parseNanos) {
+        mParseNanos = Math.max(0, mParseNanos) + parseNanos;
+    }
+
+    public void markDecodeEnqueued() {
+        mDecodeEnqueuedAt = System.nanoTime();
+    }
+
+    /**
+     * Marks the start of the wait for decode admission, unless the bitmap was already handed
+     * off to the decode stage through {@link #markDecodeEnqueued()}.
+     */
+    public void markDecodeWaiting() {
+        if (mDecodeEnqueuedAt <= mDecodeEndAt) {
+            mDecodeEnqueuedAt = System.nanoTime();
+        }
+    }
+
+    public void markDecodeStarted() {
+        mDecodeStartedAt = System.nanoTime();
+    }
+
+    public void markDecodeEnd() {
+        mDecodeEndAt = System.nanoTime();
+    }
+
+    public void markDeliveryPosted() {
+        mDeliveryPostedAt = System.nanoTime();
+    }
+
+    public void markDelivered() {
+        mDeliveredAt = System.nanoTime();
+    }
+
+    public void setCacheTier(CacheTier cacheTier) {
+        mCacheTier = cacheTier;
+    }
+
+    public long getQueueWaitMillis() {
+        return millis(mEnqueuedAt, mStartedAt);
+    }
+
+    public long getDnsMillis() {
+        return millis(mDnsStart, mDnsEnd);
+    }
+
+    public long getConnectMillis() {
+        return millis(mConnectStart, mConnectEnd);
+    }
+
+    public long getTlsMillis() {
+        return millis(mSecureConnectStart, mSecureConnectEnd);
+    }
+
+    public long getRequestWriteMillis() {
+        return millis(mRequestStart, mRequestEnd);
+    }
+
+    public long getTimeToFirstByteMillis() {
+        return millis(mRequestEnd, mResponseStart);
+    }
+
+    public long getBodyReadMillis() {
+        return millis(mResponseBodyStart, mResponseBodyEnd);
+    }
+
+    public long getParseMillis() {
+        return mParseNanos < 0 ? -1 : mParseNanos / 1000000;
+    }
+
+    public long getDecodeQueueWaitMillis() {
+        return millis(mDecodeEnqueuedAt, mDecodeStartedAt);
+    }
+
+    public long getDecodeMillis() {
+        return millis(mDecodeStartedAt, mDecodeEndAt);
+    }
+
+    public long getDeliveryDelayMillis() {
+        return millis(mDeliveryPostedAt, mDeliveredAt);
+    }
+
+    public long getTotalMillis() {
+        long start = mEnqueuedAt != 0 ? mEnqueuedAt : mStartedAt;
+        long end = mDeliveredAt != 0 ? mDeliveredAt : System.nanoTime();
+        return millis(start, end);
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public boolean isFromCache() {
+        return mCacheTier != CacheTier.NETWORK;
+    }
+
+    public CacheTier getCacheTier() {
+        return mCacheTier;
+    }
+
+    private static long millis(long start, long end) {
+        if (start == 0 || end == 0 || end < start) {
+            return -1;
+        }
+        return (end - start) / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTiming{" +
+                "queueWait=" + getQueueWaitMillis() +
+                ", dns=" + getDnsMillis() +
+                ", connect=" + getConnectMillis() +
+                ", tls=" + getTlsMillis() +
+                ", requestWrite=" + getRequestWriteMillis() +
+                ", timeToFirstByte=" + getTimeToFirstByteMillis() +
+                ", bodyRead=" + getBodyReadMillis() +
+                ", parse=" + getParseMillis() +
+                ", decodeQueueWait=" + getDecodeQueueWaitMillis() +
+                ", decode=" + getDecodeMillis() +
+                ", deliveryDelay=" + getDeliveryDelayMillis() +
+                ", total=" + getTotalMillis() +
+                ", bytesSent=" + mBytesSent +
+                ", bytesReceived=" + mBytesReceived +
+                ", cacheTier=" + mCacheTier +
+                '}';
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.prefetch;
+
+import com.android.aws.common.ConnectionQuality;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conditions under which scheduled prefetches are allowed to run.
+ */
+public class PrefetchConstraints {
+
+    private final boolean isUnmeteredRequired;
+    private final boolean isChargingRequired;
+    private final boolean isIdleRequired;
+    private final ConnectionQuality mMinConnectionQuality;
+    private final long mByteBudget;
+    private final long mBudgetWindowMillis;
+    private final int mMaxConcurrentPrefetches;
+
+    private PrefetchConstraints(Builder builder) {
+        this.isUnmeteredRequired = builder.isUnmeteredRequired;
+        this.isChargingRequired = builder.isChargingRequired;
+        this.isIdleRequired = builder.isIdleRequired;
+        this.mMinConnectionQuality = builder.mMinConnectionQuality;
+        this.mByteBudget = builder.mByteBudget;
+        this.mBudgetWindowMillis = builder.mBudgetWindowMillis;
+        this.mMaxConcurrentPrefetches = builder.mMaxConcurrentPrefetches;
+    }
+
+    public boolean isUnmeteredRequired() {
+        return isUnmeteredRequired;
+    }
+
+    public boolean isChargingRequired() {
+        return isChargingRequired;
+    }
+
+    public boolean isIdleRequired() {
+        return isIdleRequired;
+    }
+
+    public ConnectionQuality getMinConnectionQuality() {
+        return mMinConnectionQuality;
+    }
+
+    public long getByteBudget() {
+        return mByteBudget;
+    }
+
+    public long getBudgetWindowMillis() {
+        return mBudgetWindowMillis;
+    }
+
+    public int getMaxConcurrentPrefetches() {
+        return mMaxConcurrentPrefetches;
+    }
+
+    public static class Builder {
+
+        private boolean isUnmeteredRequired = true;
+        private boolean isChargingRequired;
+        private boolean isIdleRequired = true;
+        private ConnectionQuality mMinConnectionQuality = ConnectionQuality.MODERATE;
+        private long mByteBudget = 5 * 1024 * 1024;
+        private long mBudgetWindowMillis = TimeUnit.HOURS.toMillis(1);
+        private int mMaxConcurrentPrefetches = 1;
+
+        public Builder setUnmeteredRequired(boolean unmeteredRequired) {
+            isUnmeteredRequired = unmeteredRequired;
+            return this;
+        }
+
+        public Builder setChargingRequired(boolean chargingRequired) {
+            isChargingRequired = chargingRequired;
+            return this;
+        }
+
+        /**
+         * Only prefetch while no request above {@link com.android.aws.common.Priority#LOW}
+         * is in flight.
+         */
+        public Builder setIdleRequired(boolean idleRequired) {
+            isIdleRequired = idleRequired;
+            return this;
+        }
+
+        /**
+         * Only prefetch while the measured connection quality is at least the given one. An
+         * {@link ConnectionQuality#UNKNOWN} quality, before any bandwidth sample, is allowed.
+         */
+        public Builder setMinConnectionQuality(ConnectionQuality minConnectionQuality) {
+            mMinConnectionQuality = minConnectionQuality;
+            return this;
+        }
+
+        public Builder setByteBudget(long byteBudget, long window, TimeUnit timeUnit) {
+            mByteBudget = byteBudget;
+            mBudgetWindowMillis = timeUnit.toMillis(window);
+            return this;
+        }
+
+        public Builder setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+            mMaxConcurrentPrefetches = Math.max(1, maxConcurrentPrefetches);
+            return this;
+        }
+
+        public PrefetchConstraints build() {
+            return new PrefetchConstraints(this);
+        }
+    }
+}
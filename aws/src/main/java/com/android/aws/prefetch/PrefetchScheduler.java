@@ -0,0 +1,288 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.prefetch;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.aws.cache.AWSCache;
+import com.android.aws.common.AWSRequest;
+import com.android.aws.common.CacheTier;
+import com.android.aws.common.ConnectionClassManager;
+import com.android.aws.common.ConnectionQuality;
+import com.android.aws.common.Priority;
+import com.android.aws.common.ResponseType;
+import com.android.aws.core.Core;
+import com.android.aws.internal.AWSRequestQueue;
+import com.android.aws.internal.InternalNetworking;
+import com.android.aws.model.RequestTiming;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.CacheControl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Collects prefetch requests and runs them at {@link Priority#LOW} only while the configured
+ * {@link PrefetchConstraints} hold and the byte budget of the current window is not used up.
+ * Urls that are already pending, in flight or fresh in the disk cache are not fetched again.
+ */
+public class PrefetchScheduler {
+
+    private static final long RECHECK_INTERVAL_MS = 30 * 1000;
+    private static final int MAX_TRACKED_PREFETCHES = 256;
+
+    private static volatile PrefetchScheduler sInstance = null;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, AWSRequest> mPending = new LinkedHashMap<>();
+    private final Map<String, AWSRequest> mRunning = new HashMap<>();
+    private final AWSCache<String, Boolean> mPrefetchedUrls = new AWSCache<>(MAX_TRACKED_PREFETCHES);
+    private PrefetchConstraints mConstraints = new PrefetchConstraints.Builder().build();
+    private long mWindowStart;
+    private long mBytesInWindow;
+    private int mScheduledCount;
+    private int mSkippedCount;
+    private int mCompletedCount;
+    private int mHitCount;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Constraint checks query system services, so the drain itself runs off the main thread.
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks()
+                    .execute(mDrainTask);
+        }
+    };
+
+    public static PrefetchScheduler getInstance() {
+        if (sInstance == null) {
+            synchronized (PrefetchScheduler.class) {
+                if (sInstance == null) {
+                    sInstance = new PrefetchScheduler();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public static void onRequestFinished(AWSRequest request, RequestTiming timing, boolean failed) {
+        PrefetchScheduler scheduler = sInstance;
+        if (scheduler != null) {
+            scheduler.handleRequestFinished(request, timing, failed);
+        }
+    }
+
+    public synchronized void setConstraints(PrefetchConstraints constraints) {
+        mConstraints = constraints != null ? constraints : new PrefetchConstraints.Builder().build();
+        scheduleDrain(0);
+    }
+
+    public void schedule(AWSRequest request) {
+        final String url = request.getUrl();
+        synchronized (this) {
+            mScheduledCount++;
+            if (mPending.containsKey(url) || mRunning.containsKey(url)) {
+                mSkippedCount++;
+                return;
+            }
+            mPending.put(url, request);
+        }
+        scheduleDrain(0);
+    }
+
+    public synchronized PrefetchStats getStats() {
+        return new PrefetchStats(mScheduledCount, mSkippedCount, mCompletedCount, mHitCount,
+                mBytesInWindow, mPending.size());
+    }
+
+    private void handleRequestFinished(AWSRequest request, RequestTiming timing, boolean failed) {
+        if (request.getResponseAs() == ResponseType.PREFETCH) {
+            final String url = request.getUrl();
+            synchronized (this) {
+                if (mRunning.get(url) != request) {
+                    return;
+                }
+                mRunning.remove(url);
+                if (timing.getBytesReceived() > 0) {
+                    mBytesInWindow += timing.getBytesReceived();
+                }
+                if (!failed && timing.getCacheTier() == CacheTier.NETWORK) {
+                    mCompletedCount++;
+                    mPrefetchedUrls.put(url, Boolean.TRUE);
+                }
+            }
+            scheduleDrain(0);
+            return;
+        }
+        if (timing.getCacheTier() == CacheTier.DISK && mPrefetchedUrls.size() > 0
+                && mPrefetchedUrls.remove(request.getUrl()) != null) {
+            synchronized (this) {
+                mHitCount++;
+            }
+        }
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+        }
+        scheduleDrain(0);
+    }
+
+    private void scheduleDrain(long delayMillis) {
+        mHandler.removeCallbacks(mDrainRunnable);
+        mHandler.postDelayed(mDrainRunnable, delayMillis);
+    }
+
+    private synchronized void drain() {
+        for (Iterator<AWSRequest> iterator = mRunning.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isCanceled()) {
+                iterator.remove();
+            }
+        }
+        if (mPending.isEmpty()) {
+            return;
+        }
+        if (!canRun()) {
+            scheduleDrain(RECHECK_INTERVAL_MS);
+            return;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        if (mWindowStart == 0 || now - mWindowStart >= mConstraints.getBudgetWindowMillis()) {
+            mWindowStart = now;
+            mBytesInWindow = 0;
+        }
+        if (mBytesInWindow >= mConstraints.getByteBudget()) {
+            scheduleDrain(mWindowStart + mConstraints.getBudgetWindowMillis() - now);
+            return;
+        }
+        Iterator<Map.Entry<String, AWSRequest>> iterator = mPending.entrySet().iterator();
+        while (mRunning.size() < mConstraints.getMaxConcurrentPrefetches() && iterator.hasNext()) {
+            Map.Entry<String, AWSRequest> entry = iterator.next();
+            iterator.remove();
+            mRunning.put(entry.getKey(), entry.getValue());
+            execute(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void execute(final String url, final AWSRequest request) {
+        Core.getInstance().getExecutorSupplier().forLightWeightBackgroundTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (AWSRequestQueue.getInstance().isUrlInFlight(url) || isFreshInCache(request)) {
+                    synchronized (PrefetchScheduler.this) {
+                        mRunning.remove(url);
+                        mSkippedCount++;
+                    }
+                    scheduleDrain(0);
+                    return;
+                }
+                request.prefetch();
+            }
+        });
+    }
+
+    // Probes with a bare call so the prefetch request's timing, call and listeners stay untouched.
+    private static boolean isFreshInCache(AWSRequest request) {
+        Response response = null;
+        try {
+            response = InternalNetworking.getClient().newCall(new Request.Builder()
+                    .url(request.getUrl())
+                    .cacheControl(new CacheControl.Builder().onlyIfCached().build())
+                    .build()).execute();
+            return response.cacheResponse() != null && response.code() < 400;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private boolean canRun() {
+        if (mConstraints.isIdleRequired()
+                && AWSRequestQueue.getInstance().hasRequestsAbove(Priority.LOW)) {
+            return false;
+        }
+        ConnectionQuality quality = ConnectionClassManager.getInstance().getCurrentConnectionQuality();
+        if (quality != ConnectionQuality.UNKNOWN
+                && quality.ordinal() < mConstraints.getMinConnectionQuality().ordinal()) {
+            return false;
+        }
+        if (!mConstraints.isUnmeteredRequired() && !mConstraints.isChargingRequired()) {
+            return true;
+        }
+        final Context context = InternalNetworking.getContext();
+        if (context == null) {
+            return false;
+        }
+        return (!mConstraints.isUnmeteredRequired() || isUnmetered(context))
+                && (!mConstraints.isChargingRequired() || isCharging(context));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static boolean isUnmetered(Context context) {
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return false;
+        }
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return !connectivityManager.isActiveNetworkMetered();
+        }
+        int type = networkInfo.getType();
+        return type == ConnectivityManager.TYPE_WIFI || type == ConnectivityManager.TYPE_ETHERNET;
+    }
+
+    private static boolean isCharging(Context context) {
+        Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null
+                && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
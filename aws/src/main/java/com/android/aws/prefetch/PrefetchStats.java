@@ -0,0 +1,84 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.prefetch;
+
+public class PrefetchStats {
+
+    private final int mScheduledCount;
+    private final int mSkippedCount;
+    private final int mCompletedCount;
+    private final int mHitCount;
+    private final long mBytesInWindow;
+    private final int mPendingCount;
+
+    PrefetchStats(int scheduledCount, int skippedCount, int completedCount, int hitCount,
+                  long bytesInWindow, int pendingCount) {
+        mScheduledCount = scheduledCount;
+        mSkippedCount = skippedCount;
+        mCompletedCount = completedCount;
+        mHitCount = hitCount;
+        mBytesInWindow = bytesInWindow;
+        mPendingCount = pendingCount;
+    }
+
+    public int getScheduledCount() {
+        return mScheduledCount;
+    }
+
+    /**
+     * Prefetches dropped because the url was already pending, in flight or fresh in the cache.
+     */
+    public int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    public int getCompletedCount() {
+        return mCompletedCount;
+    }
+
+    /**
+     * Later requests that were served from the cache entry written by a prefetch.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public float getHitRate() {
+        return mCompletedCount == 0 ? 0f : (float) mHitCount / mCompletedCount;
+    }
+
+    public long getBytesInWindow() {
+        return mBytesInWindow;
+    }
+
+    public int getPendingCount() {
+        return mPendingCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchStats{" +
+                "scheduled=" + mScheduledCount +
+                ", skipped=" + mSkippedCount +
+                ", completed=" + mCompletedCount +
+                ", hits=" + mHitCount +
+                ", bytesInWindow=" + mBytesInWindow +
+                ", pending=" + mPendingCount +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.transformation;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import com.android.aws.interfaces.Transformation;
+
+/**
+ * Crops the largest centered circle out of the bitmap, leaving the corners transparent.
+ */
+public class CircleCropTransformation implements Transformation {
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        final int size = Math.min(source.getWidth(), source.getHeight());
+        final Matrix matrix = new Matrix();
+        matrix.setTranslate((size - source.getWidth()) / 2f, (size - source.getHeight()) / 2f);
+        final BitmapShader shader = new BitmapShader(source, Shader.TileMode.CLAMP,
+                Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(matrix);
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        paint.setShader(shader);
+
+        final Bitmap bitmap = TransformationUtils.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        final float radius = size / 2f;
+        new Canvas(bitmap).drawCircle(radius, radius, radius, paint);
+        return bitmap;
+    }
+
+    @Override
+    public String key() {
+        return "circle";
+    }
+}
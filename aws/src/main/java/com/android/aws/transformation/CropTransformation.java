@@ -0,0 +1,65 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.transformation;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import com.android.aws.interfaces.Transformation;
+
+/**
+ * Scales the bitmap to fill the given size and crops the overflow around its center.
+ */
+public class CropTransformation implements Transformation {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    public CropTransformation(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        if (source.getWidth() == mWidth && source.getHeight() == mHeight) {
+            return source;
+        }
+        final float scale = Math.max((float) mWidth / source.getWidth(),
+                (float) mHeight / source.getHeight());
+        final Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((mWidth - source.getWidth() * scale) / 2f,
+                (mHeight - source.getHeight() * scale) / 2f);
+
+        final Bitmap bitmap = TransformationUtils.createBitmap(mWidth, mHeight,
+                TransformationUtils.getConfig(source));
+        new Canvas(bitmap).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return bitmap;
+    }
+
+    @Override
+    public String key() {
+        return "crop(" + mWidth + "x" + mHeight + ")";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.transformation;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.android.aws.interfaces.Transformation;
+
+/**
+ * Rounds the corners of the bitmap with the given radius in pixels.
+ */
+public class RoundedCornersTransformation implements Transformation {
+
+    private final float mRadius;
+
+    public RoundedCornersTransformation(float radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius < 0");
+        }
+        mRadius = radius;
+    }
+
+    @Override
+    public Bitmap transform(Bitmap source) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        paint.setShader(new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+
+        final Bitmap bitmap = TransformationUtils.createBitmap(width, height,
+                Bitmap.Config.ARGB_8888);
+        new Canvas(bitmap).drawRoundRect(new RectF(0, 0, width, height), mRadius, mRadius, paint);
+        return bitmap;
+    }
+
+    @Override
+    public String key() {
+        return "rounded(" + mRadius + ")";
+    }
+}
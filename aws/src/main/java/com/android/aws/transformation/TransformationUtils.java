@@ -0,0 +1,46 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.transformation;
+
+import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import com.android.aws.cache.AWSBitmapPool;
+
+final class TransformationUtils {
+
+    private TransformationUtils() {
+    }
+
+    // Takes the output bitmap from the pool when one fits, cleared to transparent.
+    @SuppressLint("NewApi")
+    static Bitmap createBitmap(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = AWSBitmapPool.getInstance().get(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    static Bitmap.Config getConfig(Bitmap source) {
+        return source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+    }
+}
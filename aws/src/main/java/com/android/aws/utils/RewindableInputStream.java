@@ -0,0 +1,90 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Stream over a source that keeps a copy of the bytes read through it, up to a limit, so that
+ * a reader that fails early can start over without the whole source being buffered.
+ */
+final class RewindableInputStream extends InputStream {
+
+    private final BufferedSource mSource;
+    private final long mLimit;
+    private final Buffer mConsumed = new Buffer();
+    private boolean isOverflowed;
+
+    RewindableInputStream(BufferedSource source, long limit) {
+        mSource = source;
+        mLimit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (mSource.exhausted()) {
+            return -1;
+        }
+        final byte b = mSource.readByte();
+        record(new byte[]{b}, 0, 1);
+        return b & 0xff;
+    }
+
+    @Override
+    public int read(byte[] sink, int offset, int byteCount) throws IOException {
+        final int read = mSource.read(sink, offset, byteCount);
+        if (read > 0) {
+            record(sink, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(mSource.buffer().size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a stream that reads the source again from the start.
+     *
+     * @throws IOException If more than the limit was already read
+     */
+    InputStream rewind() throws IOException {
+        if (isOverflowed) {
+            throw new IOException("Read past the rewind limit of " + mLimit + " bytes");
+        }
+        return new SequenceInputStream(mConsumed.inputStream(), mSource.inputStream());
+    }
+
+    private void record(byte[] bytes, int offset, int byteCount) {
+        if (isOverflowed) {
+            return;
+        }
+        if (mConsumed.size() + byteCount > mLimit) {
+            isOverflowed = true;
+            mConsumed.clear();
+            return;
+        }
+        mConsumed.write(bytes, offset, byteCount);
+    }
+}
@@ -18,16 +18,19 @@
 package com.android.aws.utils;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.widget.ImageView;
 
+import com.android.aws.cache.AWSBitmapPool;
 import com.android.aws.common.AWSConstants;
 import com.android.aws.common.AWSRequest;
 import com.android.aws.common.AWSResponse;
 import com.android.aws.core.Core;
 import com.android.aws.error.AWSError;
 import com.android.aws.interfaces.AnalyticsListener;
+import com.android.aws.interfaces.CompressionAnalyticsListener;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -38,15 +41,24 @@ import java.net.URLConnection;
 
 import okhttp3.Cache;
 import okhttp3.Response;
+import okio.BufferedSource;
 import okio.Okio;
 
 public class Utils {
 
+    // Growing amounts of the body that are peeked to find the image bounds, most headers fit
+    // in the first one.
+    private static final long[] BOUNDS_PEEK_SIZES = {16 * 1024, 64 * 1024, 256 * 1024, Long.MAX_VALUE};
+
+    // How much of the image is kept while decoding into a pooled bitmap. A bitmap that does not
+    // fit is rejected once the header is parsed, well within this.
+    private static final long POOLED_DECODE_REWIND_LIMIT = 256 * 1024;
+
     public static File getDiskCacheDir(Context context, String uniqueName) {
         return new File(context.getCacheDir(), uniqueName);
     }
 
-    public static Cache getCache(Context context, int maxCacheSize, String uniqueName) {
+    public static Cache getCache(Context context, long maxCacheSize, String uniqueName) {
         return new Cache(getDiskCacheDir(context, uniqueName), maxCacheSize);
     }
 
@@ -70,38 +82,65 @@ public class Utils {
                                                    int maxHeight, Bitmap.Config decodeConfig,
                                                    BitmapFactory.Options decodeOptions,
                                                    ImageView.ScaleType scaleType) {
-        byte[] data = new byte[0];
+        final BufferedSource source = response.body().source();
+        Bitmap bitmap = null;
+        decodeOptions.inPreferredConfig = decodeConfig;
         try {
-            data = Okio.buffer(response.body().source()).readByteArray();
+            decodeBounds(source, decodeOptions);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        Bitmap bitmap = null;
-        if (maxWidth == 0 && maxHeight == 0) {
-            decodeOptions.inPreferredConfig = decodeConfig;
-            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-        } else {
-            decodeOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-            int actualWidth = decodeOptions.outWidth;
-            int actualHeight = decodeOptions.outHeight;
+        int actualWidth = decodeOptions.outWidth;
+        int actualHeight = decodeOptions.outHeight;
 
+        if (actualWidth > 0 && actualHeight > 0) {
             int desiredWidth = getResizedDimension(maxWidth, maxHeight,
                     actualWidth, actualHeight, scaleType);
             int desiredHeight = getResizedDimension(maxHeight, maxWidth,
                     actualHeight, actualWidth, scaleType);
 
-            decodeOptions.inJustDecodeBounds = false;
-            decodeOptions.inSampleSize =
+            final int sampleSize = (maxWidth == 0 && maxHeight == 0) ? 1 :
                     findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-            Bitmap tempBitmap =
-                    BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            int width = (actualWidth + sampleSize - 1) / sampleSize;
+            int height = (actualHeight + sampleSize - 1) / sampleSize;
+
+            // Let the decoder scale the sampled image down to the desired size through the
+            // density ratio instead of decoding at full size and scaling a copy. This only
+            // keeps the aspect ratio, so FIT_XY still needs a scaled copy.
+            final boolean isScaledInDecode = width > desiredWidth && desiredWidth > 0
+                    && scaleType != ImageView.ScaleType.FIT_XY;
+            final boolean isScaled = decodeOptions.inScaled;
+            final int density = decodeOptions.inDensity;
+            final int targetDensity = decodeOptions.inTargetDensity;
+            decodeOptions.inSampleSize = sampleSize;
+            if (isScaledInDecode) {
+                decodeOptions.inScaled = true;
+                decodeOptions.inDensity = width;
+                decodeOptions.inTargetDensity = desiredWidth;
+                height = (int) ((long) height * desiredWidth / width + 1);
+                width = desiredWidth;
+            }
+            Bitmap tempBitmap = null;
+            try {
+                tempBitmap = decodeReusingBitmap(source, decodeOptions, width, height);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                decodeOptions.inScaled = isScaled;
+                decodeOptions.inDensity = density;
+                decodeOptions.inTargetDensity = targetDensity;
+            }
+            if (tempBitmap != null && isScaledInDecode) {
+                tempBitmap.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+            }
 
-            if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth ||
-                    tempBitmap.getHeight() > desiredHeight)) {
+            if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth + 1 ||
+                    tempBitmap.getHeight() > desiredHeight + 1)) {
                 bitmap = Bitmap.createScaledBitmap(tempBitmap,
                         desiredWidth, desiredHeight, true);
-                tempBitmap.recycle();
+                if (bitmap != tempBitmap) {
+                    AWSBitmapPool.getInstance().put(tempBitmap);
+                }
             } else {
                 bitmap = tempBitmap;
             }
@@ -114,7 +153,55 @@ public class Utils {
         }
     }
 
-    private static int getResizedDimension(int maxPrimary, int maxSecondary,
+    /**
+     * Reads the image bounds into the given options from as little of the source as possible.
+     * The bytes are peeked, so the source still starts at the beginning of the image afterwards.
+     */
+    public static void decodeBounds(BufferedSource source, BitmapFactory.Options decodeOptions)
+            throws IOException {
+        decodeOptions.inJustDecodeBounds = true;
+        try {
+            for (long byteCount : BOUNDS_PEEK_SIZES) {
+                final boolean isExhausted = !source.request(byteCount);
+                decodeOptions.outWidth = -1;
+                decodeOptions.outHeight = -1;
+                BitmapFactory.decodeStream(source.buffer().clone().inputStream(), null,
+                        decodeOptions);
+                if (isExhausted || (decodeOptions.outWidth > 0 && decodeOptions.outHeight > 0)) {
+                    return;
+                }
+            }
+        } finally {
+            decodeOptions.inJustDecodeBounds = false;
+        }
+    }
+
+    private static Bitmap decodeReusingBitmap(BufferedSource source,
+                                              BitmapFactory.Options decodeOptions,
+                                              int width, int height) throws IOException {
+        final Bitmap.Config config = decodeOptions.inPreferredConfig != null ?
+                decodeOptions.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        decodeOptions.inMutable = true;
+        decodeOptions.inBitmap = AWSBitmapPool.getInstance().get(width, height, config);
+        if (decodeOptions.inBitmap == null) {
+            return BitmapFactory.decodeStream(source.inputStream(), null, decodeOptions);
+        }
+        // Keep the start of the image, so it can be decoded again if the pooled bitmap is rejected.
+        final RewindableInputStream stream = new RewindableInputStream(source,
+                POOLED_DECODE_REWIND_LIMIT);
+        try {
+            return BitmapFactory.decodeStream(stream, null, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit this image, decode into a new one.
+            AWSBitmapPool.getInstance().put(decodeOptions.inBitmap);
+            decodeOptions.inBitmap = null;
+            return BitmapFactory.decodeStream(stream.rewind(), null, decodeOptions);
+        } finally {
+            decodeOptions.inBitmap = null;
+        }
+    }
+
+    public static int getResizedDimension(int maxPrimary, int maxSecondary,
                                            int actualPrimary, int actualSecondary,
                                            ImageView.ScaleType scaleType) {
 
@@ -212,6 +299,22 @@ public class Utils {
         });
     }
 
+    public static void sendCompressionAnalytics(AWSRequest request) {
+        final AnalyticsListener analyticsListener = request.getAnalyticsListener();
+        final long rawBytes = request.getRawBytesSent();
+        final long compressedBytes = request.getCompressedBytesSent();
+        if (!(analyticsListener instanceof CompressionAnalyticsListener) || compressedBytes < 0) {
+            return;
+        }
+        Core.getInstance().getExecutorSupplier().forMainThreadTasks().execute(new Runnable() {
+            @Override
+            public void run() {
+                ((CompressionAnalyticsListener) analyticsListener)
+                        .onRequestCompressed(rawBytes, compressedBytes);
+            }
+        });
+    }
+
     public static AWSError getErrorForConnection(AWSError error) {
         error.setErrorDetail(AWSConstants.CONNECTION_ERROR);
         error.setErrorCode(0);
@@ -18,15 +18,23 @@
 package com.android.aws.widget;
 
 import android.content.Context;
+import android.graphics.Rect;
 import android.support.v7.widget.AppCompatImageView;
 import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
 import com.android.aws.error.AWSError;
+import com.android.aws.interfaces.Transformation;
 import com.android.aws.internal.AWSImageLoader;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class AWSImageView extends AppCompatImageView {
 
     private String mUrl;
@@ -35,8 +43,26 @@ public class AWSImageView extends AppCompatImageView {
 
     private int mErrorImageId;
 
+    private Object mImageLoadTag;
+
+    private List<Transformation> mTransformations;
+
+    private String mTransformationKey = "";
+
     private AWSImageLoader.ImageContainer mImageContainer;
 
+    private final Rect mVisibleRect = new Rect();
+
+    private final int[] mLocation = new int[2];
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    updateVisibility();
+                }
+            };
+
     public AWSImageView(Context context) {
         this(context, null);
     }
@@ -62,6 +88,24 @@ public class AWSImageView extends AppCompatImageView {
         mErrorImageId = errorImage;
     }
 
+    /**
+     * Sets the tag that {@link AWSImageLoader#pause(Object)} and
+     * {@link AWSImageLoader#resume(Object)} use to hold back the loading of this view.
+     */
+    public void setImageLoadTag(Object tag) {
+        mImageLoadTag = tag;
+    }
+
+    /**
+     * Sets the transformations applied to the image before it is cached and shown, e.g.
+     * {@link com.android.aws.transformation.CircleCropTransformation} for round avatars.
+     */
+    public void setTransformations(Transformation... transformations) {
+        mTransformations = transformations.length > 0
+                ? new ArrayList<Transformation>(Arrays.asList(transformations)) : null;
+        loadImageIfNecessary(false);
+    }
+
     void loadImageIfNecessary(final boolean isInLayoutPass) {
         int width = getWidth();
         int height = getHeight();
@@ -81,18 +125,24 @@ public class AWSImageView extends AppCompatImageView {
         if (TextUtils.isEmpty(mUrl)) {
             if (mImageContainer != null) {
                 mImageContainer.cancelRequest();
-                mImageContainer = null;
             }
             setDefaultImageOrNull();
+            if (mImageContainer != null) {
+                mImageContainer.release();
+                mImageContainer = null;
+            }
             return;
         }
 
         if (mImageContainer != null && mImageContainer.getRequestUrl() != null) {
-            if (mImageContainer.getRequestUrl().equals(mUrl)) {
+            if (mImageContainer.getRequestUrl().equals(mUrl)
+                    && AWSImageLoader.getTransformationKey(mTransformations)
+                    .equals(mTransformationKey)) {
                 return;
             } else {
                 mImageContainer.cancelRequest();
                 setDefaultImageOrNull();
+                mImageContainer.release();
             }
         }
 
@@ -108,6 +158,9 @@ public class AWSImageView extends AppCompatImageView {
                             post(new Runnable() {
                                 @Override
                                 public void run() {
+                                    if (mImageContainer != response) {
+                                        return;
+                                    }
                                     onResponse(response, false);
                                 }
                             });
@@ -116,6 +169,8 @@ public class AWSImageView extends AppCompatImageView {
 
                         if (response.getBitmap() != null) {
                             setImageBitmap(response.getBitmap());
+                        } else if (response.getPlaceholder() != null) {
+                            setImageBitmap(response.getPlaceholder());
                         } else if (mDefaultImageId != 0) {
                             setImageResource(mDefaultImageId);
                         }
@@ -127,9 +182,40 @@ public class AWSImageView extends AppCompatImageView {
                             setImageResource(mErrorImageId);
                         }
                     }
-                }, maxWidth, maxHeight, scaleType);
+                }, maxWidth, maxHeight, scaleType, mImageLoadTag, mTransformations);
 
         mImageContainer = newContainer;
+        mTransformationKey = AWSImageLoader.getTransformationKey(mTransformations);
+        updateVisibility();
+    }
+
+    // Reports to the loader where this view is while its image is pending, so that on-screen
+    // images are fetched before the ones laid out ahead of the viewport.
+    private void updateVisibility() {
+        if (mImageContainer == null || mImageContainer.getBitmap() != null) {
+            return;
+        }
+        mImageContainer.setVisibility(getImageVisibility());
+    }
+
+    private AWSImageLoader.Visibility getImageVisibility() {
+        if (getWindowVisibility() != VISIBLE || !isShown()) {
+            return AWSImageLoader.Visibility.OFF_SCREEN;
+        }
+        if (getGlobalVisibleRect(mVisibleRect)) {
+            return AWSImageLoader.Visibility.VISIBLE;
+        }
+        // Within one screen of the viewport counts as about to become visible.
+        final View root = getRootView();
+        final int viewportWidth = root.getWidth();
+        final int viewportHeight = root.getHeight();
+        getLocationInWindow(mLocation);
+        if (mLocation[0] + getWidth() > -viewportWidth && mLocation[0] < 2 * viewportWidth
+                && mLocation[1] + getHeight() > -viewportHeight
+                && mLocation[1] < 2 * viewportHeight) {
+            return AWSImageLoader.Visibility.NEAR_VISIBLE;
+        }
+        return AWSImageLoader.Visibility.OFF_SCREEN;
     }
 
     private void setDefaultImageOrNull() {
@@ -146,11 +232,25 @@ public class AWSImageView extends AppCompatImageView {
         loadImageIfNecessary(true);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateVisibility();
+    }
+
     @Override
     protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
         if (mImageContainer != null) {
             mImageContainer.cancelRequest();
             setImageBitmap(null);
+            mImageContainer.release();
             mImageContainer = null;
         }
         super.onDetachedFromWindow();
@@ -0,0 +1,93 @@
+/*
+ *    Copyright (C) 2018 Renish Patel
+ *    Copyright (C) 2011 Android Open Source Project
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.android.aws.widget;
+
+import android.widget.AbsListView;
+
+import com.android.aws.internal.AWSImageLoader;
+
+/**
+ * Pauses image loading for a tag while a list scrolls and resumes it once the list settles.
+ * Can be set directly on a ListView or GridView. A RecyclerView.OnScrollListener can forward
+ * its scroll state to {@link #onScrollStateChanged(int)}, as RecyclerView uses the same
+ * values for idle, dragging and settling.
+ */
+public class PauseOnScrollListener implements AbsListView.OnScrollListener {
+
+    private final Object mTag;
+
+    private final boolean isPauseOnScroll;
+
+    private final boolean isPauseOnFling;
+
+    private final AbsListView.OnScrollListener mDelegate;
+
+    public PauseOnScrollListener(Object tag) {
+        this(tag, false, true, null);
+    }
+
+    public PauseOnScrollListener(Object tag, boolean pauseOnScroll, boolean pauseOnFling) {
+        this(tag, pauseOnScroll, pauseOnFling, null);
+    }
+
+    public PauseOnScrollListener(Object tag, boolean pauseOnScroll, boolean pauseOnFling,
+                                 AbsListView.OnScrollListener delegate) {
+        mTag = tag;
+        isPauseOnScroll = pauseOnScroll;
+        isPauseOnFling = pauseOnFling;
+        mDelegate = delegate;
+    }
+
+    public void onScrollStateChanged(int scrollState) {
+        switch (scrollState) {
+            case SCROLL_STATE_IDLE:
+                AWSImageLoader.getInstance().resume(mTag);
+                break;
+            case SCROLL_STATE_TOUCH_SCROLL:
+                if (isPauseOnScroll) {
+                    AWSImageLoader.getInstance().pause(mTag);
+                } else {
+                    AWSImageLoader.getInstance().resume(mTag);
+                }
+                break;
+            case SCROLL_STATE_FLING:
+                if (isPauseOnFling) {
+                    AWSImageLoader.getInstance().pause(mTag);
+                } else {
+                    AWSImageLoader.getInstance().resume(mTag);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        onScrollStateChanged(scrollState);
+        if (mDelegate != null) {
+            mDelegate.onScrollStateChanged(view, scrollState);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                         int totalItemCount) {
+        if (mDelegate != null) {
+            mDelegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+}
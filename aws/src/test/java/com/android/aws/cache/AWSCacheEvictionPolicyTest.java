@@ -0,0 +1,46 @@
+package com.android.aws.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a synthetic trace against both eviction policies of {@link AWSCache}.
+ */
+public class AWSCacheEvictionPolicyTest {
+
+    private static final int CACHE_SIZE = 100;
+    private static final int HOT_KEYS = 50;
+    private static final int SCAN_KEYS_PER_ROUND = 200;
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void tinyLfuKeepsHotSetThroughScan() throws Exception {
+        final double lruHitRate = replay(new AWSCache<String, String>(CACHE_SIZE, EvictionPolicy.LRU));
+        final double tinyLfuHitRate = replay(
+                new AWSCache<String, String>(CACHE_SIZE, EvictionPolicy.W_TINY_LFU));
+
+        assertTrue("TinyLFU hit rate " + tinyLfuHitRate + " not above LRU " + lruHitRate,
+                tinyLfuHitRate > lruHitRate);
+    }
+
+    // Every round reads the hot set, then a burst of one-off keys larger than the cache.
+    private static double replay(AWSCache<String, String> cache) {
+        int scanKey = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < HOT_KEYS; i++) {
+                access(cache, "hot-" + i);
+            }
+            for (int i = 0; i < SCAN_KEYS_PER_ROUND; i++) {
+                access(cache, "scan-" + scanKey++);
+            }
+        }
+        return (double) cache.hitCount() / (cache.hitCount() + cache.missCount());
+    }
+
+    private static void access(AWSCache<String, String> cache, String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key);
+        }
+    }
+}
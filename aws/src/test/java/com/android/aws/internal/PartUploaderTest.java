@@ -0,0 +1,262 @@
+package com.android.aws.internal;
+
+import com.android.aws.common.PartUploadRequest;
+import com.android.aws.error.AWSError;
+import com.android.aws.interfaces.PartUploadListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link PartUploader} against a stand-in S3 server implemented as an interceptor.
+ */
+public class PartUploaderTest {
+
+    private static final String URL = "https://bucket.example.com/key";
+    private static final String UPLOAD_ID = "upload-1";
+    private static final long BACKOFF_MS = 50;
+
+    private ExecutorService mExecutor;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mExecutor = Executors.newCachedThreadPool();
+        mFile = File.createTempFile("part-upload", ".bin");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(new byte[25]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mFile.delete();
+    }
+
+    @Test
+    public void uploadsAllPartsAndCompletes() throws Exception {
+        FakeServer server = new FakeServer();
+        Result result = upload(server, 3);
+
+        assertNull(result.error);
+        assertEquals("<CompleteMultipartUploadResult/>", result.response);
+        assertEquals(1, server.count("POST", "uploads"));
+        assertEquals(3, server.count("PUT", "partNumber"));
+        assertEquals(0, server.count("DELETE", "uploadId"));
+        String completeBody = server.body("POST", "uploadId");
+        assertTrue(completeBody.contains("<Part><PartNumber>1</PartNumber><ETag>etag-1</ETag></Part>"
+                + "<Part><PartNumber>2</PartNumber><ETag>etag-2</ETag></Part>"
+                + "<Part><PartNumber>3</PartNumber><ETag>etag-3</ETag></Part>"));
+        for (Recorded recorded : server.requests("PUT", "partNumber")) {
+            assertEquals(UPLOAD_ID, recorded.request.url().queryParameter("uploadId"));
+        }
+    }
+
+    @Test
+    public void retriesFailedPartWithBackoff() throws Exception {
+        FakeServer server = new FakeServer();
+        server.partFailures[2] = 2;
+        Result result = upload(server, 3);
+
+        assertNull(result.error);
+        assertNotNull(result.response);
+        List<Recorded> attempts = server.requests("PUT", "partNumber=2");
+        assertEquals(3, attempts.size());
+        assertTrue(attempts.get(1).nanos - attempts.get(0).nanos
+                >= TimeUnit.MILLISECONDS.toNanos(BACKOFF_MS));
+        assertTrue(attempts.get(2).nanos - attempts.get(1).nanos
+                >= TimeUnit.MILLISECONDS.toNanos(2 * BACKOFF_MS));
+        assertEquals(0, server.count("DELETE", "uploadId"));
+    }
+
+    @Test
+    public void abortsWhenPartKeepsFailing() throws Exception {
+        FakeServer server = new FakeServer();
+        server.partFailures[2] = Integer.MAX_VALUE;
+        Result result = upload(server, 2);
+
+        assertNull(result.response);
+        assertNotNull(result.error);
+        assertEquals(500, result.error.getErrorCode());
+        assertEquals(3, server.requests("PUT", "partNumber=2").size());
+        assertTrue(server.awaitAbort());
+        assertEquals(0, server.count("POST", "uploadId"));
+    }
+
+    @Test
+    public void abortsWithoutRetryOnClientError() throws Exception {
+        FakeServer server = new FakeServer();
+        server.partFailures[1] = Integer.MAX_VALUE;
+        server.failureCode = 403;
+        Result result = upload(server, 3);
+
+        assertNotNull(result.error);
+        assertEquals(403, result.error.getErrorCode());
+        assertEquals(1, server.requests("PUT", "partNumber=1").size());
+        assertTrue(server.awaitAbort());
+        assertFalse(server.requests("DELETE", "uploadId").isEmpty());
+        assertEquals(0, server.count("POST", "uploadId"));
+    }
+
+    private Result upload(FakeServer server, int maxRetries) throws InterruptedException {
+        final Result result = new Result();
+        final CountDownLatch done = new CountDownLatch(1);
+        PartUploadRequest request = new PartUploadRequest.Builder(URL, mFile)
+                .setPartSize(10)
+                .setConcurrency(2)
+                .setMaxRetries(maxRetries)
+                .setContentType("application/octet-stream")
+                .setExecutor(mExecutor)
+                .setOkHttpClient(new OkHttpClient.Builder().addInterceptor(server).build())
+                .build();
+        new PartUploader(request, new PartUploadListener() {
+            @Override
+            public void onUploadComplete(String response) {
+                result.response = response;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(AWSError awsError) {
+                result.error = awsError;
+                done.countDown();
+            }
+        }, mExecutor, BACKOFF_MS).start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static final class Result {
+        volatile String response;
+        volatile AWSError error;
+    }
+
+    private static final class Recorded {
+        final Request request;
+        final String body;
+        final long nanos = System.nanoTime();
+
+        Recorded(Request request, String body) {
+            this.request = request;
+            this.body = body;
+        }
+    }
+
+    private static final class FakeServer implements Interceptor {
+
+        final int[] partFailures = new int[4];
+        int failureCode = 500;
+        private final List<Recorded> mRequests =
+                Collections.synchronizedList(new ArrayList<Recorded>());
+        private final CountDownLatch mAborted = new CountDownLatch(1);
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            String body = "";
+            if (request.body() != null) {
+                Buffer buffer = new Buffer();
+                request.body().writeTo(buffer);
+                body = buffer.readUtf8();
+            }
+            mRequests.add(new Recorded(request, body));
+
+            String method = request.method();
+            String query = request.url().query();
+            if (method.equals("POST") && query.equals("uploads")) {
+                return respond(request, 200, null,
+                        "<InitiateMultipartUploadResult><UploadId>" + UPLOAD_ID
+                                + "</UploadId></InitiateMultipartUploadResult>");
+            }
+            if (method.equals("PUT")) {
+                int partNumber = Integer.parseInt(request.url().queryParameter("partNumber"));
+                synchronized (this) {
+                    if (partFailures[partNumber] > 0) {
+                        partFailures[partNumber]--;
+                        return respond(request, failureCode, null, "<Error/>");
+                    }
+                }
+                return respond(request, 200, "etag-" + partNumber, "");
+            }
+            if (method.equals("POST")) {
+                return respond(request, 200, null, "<CompleteMultipartUploadResult/>");
+            }
+            if (method.equals("DELETE")) {
+                mAborted.countDown();
+                return respond(request, 204, null, "");
+            }
+            return respond(request, 400, null, "");
+        }
+
+        boolean awaitAbort() throws InterruptedException {
+            return mAborted.await(10, TimeUnit.SECONDS);
+        }
+
+        int count(String method, String query) {
+            return requests(method, query).size();
+        }
+
+        String body(String method, String query) {
+            List<Recorded> requests = requests(method, query);
+            return requests.isEmpty() ? null : requests.get(0).body;
+        }
+
+        List<Recorded> requests(String method, String query) {
+            List<Recorded> matches = new ArrayList<Recorded>();
+            synchronized (mRequests) {
+                for (Recorded recorded : mRequests) {
+                    String recordedQuery = recorded.request.url().query();
+                    if (recorded.request.method().equals(method) && recordedQuery != null
+                            && recordedQuery.contains(query)) {
+                        matches.add(recorded);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        private static Response respond(Request request, int code, String eTag, String body) {
+            Response.Builder builder = new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message("status " + code)
+                    .body(ResponseBody.create(MediaType.parse("application/xml"), body));
+            if (eTag != null) {
+                builder.header("ETag", eTag);
+            }
+            return builder.build();
+        }
+    }
+}